@@ -1,6 +1,7 @@
 plugins {
     id("java-library")
     id("com.gradleup.shadow") version "9.3.1"
+    id("me.champeau.jmh") version "0.7.3"
     id("run-hytale")
 }
 
@@ -8,6 +9,12 @@ group = findProperty("pluginGroup") as String? ?: "com.jodek"
 version = findProperty("pluginVersion") as String? ?: "1.0.0"
 description = findProperty("pluginDescription") as String? ?: "Configure the percentage of players that need to sleep to skip the night"
 
+// Headless simulation of many worlds and players (./gradlew runSimulation)
+val simulation: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath
+}
+
 repositories {
     mavenLocal()
     mavenCentral()
@@ -24,6 +31,25 @@ dependencies {
     // Test dependencies
     testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    // Benchmarks run outside the server, so they need the Hytale classes on their own classpath
+    jmhImplementation(files("libs/HytaleServer.jar"))
+}
+
+// Configure simulation runs, e.g. ./gradlew runSimulation --args="--worlds 200 --players 25"
+tasks.register<JavaExec>("runSimulation") {
+    group = "verification"
+    description = "Runs the headless sleep simulation"
+    classpath = simulation.runtimeClasspath
+    mainClass = "com.jodek.simplesleep.simulation.SleepSimulation"
+}
+
+// Configure benchmarks (./gradlew jmh)
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    resultFormat = "JSON"
 }
 
 // Configure server testing
@@ -0,0 +1,58 @@
+package com.jodek.simplesleep.benchmarks;
+
+import com.hypixel.hytale.protocol.packets.interface_.Notification;
+import com.jodek.simplesleep.util.MessageUtil;
+import com.jodek.simplesleep.util.SleepMessageCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the notifications of the MessageUtil broadcasts, cached vs. built for every update
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageCacheBenchmark {
+
+    @Param({"1", "10", "50", "150", "500"})
+    public int players;
+
+    private SleepMessageCache cache;
+    private int sleeping;
+
+    @Setup
+    public void setup() {
+        cache = new SleepMessageCache();
+        sleeping = 0;
+    }
+
+    @Benchmark
+    public Notification cached() {
+        sleeping = sleeping % players + 1;
+        return cache.get(sleeping, players);
+    }
+
+    @Benchmark
+    public Notification uncached() {
+        sleeping = sleeping % players + 1;
+        return MessageUtil.createActionBar(sleeping + "/" + players + " players sleeping");
+    }
+
+    /**
+     * Packet of MessageUtil.broadcastNotificationWithSubtitle
+     * The per-player write of the broadcasts needs connected players and is not measured
+     */
+    @Benchmark
+    public Notification withSubtitle() {
+        sleeping = sleeping % players + 1;
+        return MessageUtil.createNotificationWithSubtitle("Good morning!", sleeping + "/" + players + " players slept");
+    }
+}
@@ -0,0 +1,71 @@
+package com.jodek.simplesleep.benchmarks;
+
+import com.jodek.simplesleep.config.SleepConfig;
+import com.jodek.simplesleep.config.SleepSettings;
+import com.jodek.simplesleep.policy.MutableSleepCounts;
+import com.jodek.simplesleep.policy.SleepPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of working out the required sleepers, done once per world on every check
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequiredSleepersBenchmark {
+
+    @Param({"percentage", "amount", "minimum", "all_but"})
+    public String mode;
+
+    @Param({"1", "10", "50", "150", "500"})
+    public int players;
+
+    private SleepConfig config;
+    private SleepSettings settings;
+    private SleepPolicy policy;
+    private MutableSleepCounts counts;
+
+    @Setup
+    public void setup() {
+        // Never loaded or saved, only the in-memory values are used
+        config = new SleepConfig(Paths.get("build", "jmh", "SimpleSleep.json"));
+        config.mode = mode;
+        settings = config.compile();
+        policy = settings.getDefaultRules().getPolicy();
+        counts = new MutableSleepCounts().set(0, 0, players);
+    }
+
+    /**
+     * Parses the mode string on every call
+     */
+    @Benchmark
+    public int requiredSleepingPlayers() {
+        return config.getRequiredSleepingPlayers(players);
+    }
+
+    /**
+     * Compiled global rules from the total alone
+     */
+    @Benchmark
+    public int compiledRequiredSleepingPlayers() {
+        return settings.getRequiredSleepingPlayers(players);
+    }
+
+    /**
+     * Compiled policy with reused counts, what the sleep checks use
+     */
+    @Benchmark
+    public int policyRequiredSleepingPlayers() {
+        return policy.getRequiredSleepingPlayers(counts);
+    }
+}
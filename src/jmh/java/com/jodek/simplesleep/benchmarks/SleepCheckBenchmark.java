@@ -0,0 +1,103 @@
+package com.jodek.simplesleep.benchmarks;
+
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSleep;
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSomnolence;
+import com.jodek.simplesleep.config.SleepConfig;
+import com.jodek.simplesleep.config.SleepSettings;
+import com.jodek.simplesleep.events.SleepDecision;
+import com.jodek.simplesleep.events.SleepEvaluator;
+import com.jodek.simplesleep.events.SleepSnapshot;
+import com.jodek.simplesleep.events.SleepTally;
+import com.jodek.simplesleep.scheduler.AdaptiveCheckPlanner;
+import com.jodek.simplesleep.state.WorldSleepState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sleep check of a world without the server: the per-player count of SleepSnapshot.capture
+ * and the SleepEvaluator decision checkWorldSleep carries out
+ * Players are real PlayerSomnolence components, without an activity tracker or weights the
+ * count never touches the store or the PlayerRef
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SleepCheckBenchmark {
+
+    @Param({"1", "10", "50", "150", "500"})
+    public int players;
+
+    private PlayerSomnolence[] somnolence;
+    private SleepTally tally;
+    private SleepSnapshot snapshot;
+    private SleepSettings settings;
+    private SleepEvaluator evaluator;
+    private WorldSleepState state;
+
+    @Setup
+    public void setup() {
+        // A third ready, a sixth just went to bed, the rest awake (with and without the component)
+        Instant now = Instant.now();
+        somnolence = new PlayerSomnolence[players];
+        for (int i = 0; i < players; i++) {
+            somnolence[i] = switch (i % 6) {
+                case 0, 1 -> new PlayerSomnolence(new PlayerSleep.NoddingOff(now.minusSeconds(10)));
+                case 2 -> new PlayerSomnolence(new PlayerSleep.NoddingOff(now));
+                case 3, 4 -> new PlayerSomnolence(new PlayerSleep.MorningWakeUp(now));
+                default -> null;
+            };
+        }
+
+        tally = new SleepTally();
+        snapshot = countPlayers();
+
+        // Never loaded or saved, only the in-memory values are used
+        settings = new SleepConfig(Paths.get("build", "jmh", "SimpleSleep.json")).compile();
+        evaluator = new SleepEvaluator();
+        state = new WorldSleepState("world");
+    }
+
+    /**
+     * Counting loop of SleepSnapshot.capture and SleepCountingSystem
+     */
+    @Benchmark
+    public SleepSnapshot countPlayers() {
+        tally.begin(null, null, 0L, System.currentTimeMillis());
+        for (PlayerSomnolence player : somnolence) {
+            tally.add(null, null, null, player);
+        }
+        return tally.finish();
+    }
+
+    /**
+     * Decision on counted players, the engine-independent part of checkWorldSleep
+     */
+    @Benchmark
+    public SleepDecision evaluate() {
+        return evaluator.evaluate(state, settings, "world", snapshot, System.currentTimeMillis());
+    }
+
+    /**
+     * Count, decision and planning of the next check, everything but the world's side effects
+     */
+    @Benchmark
+    public long checkWorld() {
+        long checkStart = System.nanoTime();
+        SleepSnapshot counted = countPlayers();
+        long now = System.currentTimeMillis();
+        evaluator.evaluate(state, settings, "world", counted, now);
+        evaluator.completeCheck(state, settings, counted, System.nanoTime() - checkStart,
+            AdaptiveCheckPlanner.planSleepingDelay(counted), now);
+        return state.getNextCheckMillis();
+    }
+}
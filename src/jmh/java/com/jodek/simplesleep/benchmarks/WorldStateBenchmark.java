@@ -0,0 +1,70 @@
+package com.jodek.simplesleep.benchmarks;
+
+import com.jodek.simplesleep.scheduler.AdaptiveCheckPlanner;
+import com.jodek.simplesleep.state.WorldSleepState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-world bookkeeping done by the scheduler tick and by every check
+ * Worlds stand in as plain WorldSleepState objects, the server's World is not needed for this part
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WorldStateBenchmark {
+
+    @Param({"1", "10", "50", "150", "500"})
+    public int worlds;
+
+    private WorldSleepState[] states;
+
+    @Setup
+    public void setup() {
+        states = new WorldSleepState[worlds];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < worlds; i++) {
+            states[i] = new WorldSleepState("world-" + i);
+            // Half of the worlds are due, the other half wait for daytime to pass
+            states[i].setNextCheckMillis(i % 2 == 0 ? now : now + AdaptiveCheckPlanner.MAX_DAY_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * One scheduler tick: find the due worlds and queue (then start) one check each,
+     * with the state calls of SleepEventHandler.checkAllWorlds and requestCheck
+     */
+    @Benchmark
+    public int schedulerTick() {
+        long now = System.currentTimeMillis();
+        long nanoTime = System.nanoTime();
+        int queued = 0;
+        for (WorldSleepState state : states) {
+            if (state.isCheckDue(now) && state.tryQueueCheck(nanoTime)) {
+                state.startQueuedCheck(nanoTime);
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Planning the next check of every world after it was counted
+     */
+    @Benchmark
+    public long loadBackoff() {
+        long total = 0L;
+        for (WorldSleepState state : states) {
+            total += AdaptiveCheckPlanner.applyLoadBackoff(AdaptiveCheckPlanner.NIGHT_DELAY_MILLIS, state, 50);
+        }
+        return total;
+    }
+}
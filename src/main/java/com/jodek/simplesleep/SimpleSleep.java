@@ -1,17 +1,41 @@
 package com.jodek.simplesleep;
 
+import com.hypixel.hytale.component.ResourceType;
+import com.hypixel.hytale.server.core.event.events.player.AddPlayerToWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.DrainPlayerFromWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerChatEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerMouseButtonEvent;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.events.AddWorldEvent;
+import com.hypixel.hytale.server.core.universe.world.events.RemoveWorldEvent;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.commands.SimpleSleepCommand;
+import com.jodek.simplesleep.config.ConfigWatcher;
 import com.jodek.simplesleep.config.SleepConfig;
+import com.jodek.simplesleep.config.SleepSettings;
 import com.jodek.simplesleep.events.SleepEventHandler;
+import com.jodek.simplesleep.metrics.SleepMetricsJmx;
+import com.jodek.simplesleep.scheduler.AdaptiveCheckPlanner;
+import com.jodek.simplesleep.scheduler.SleepScheduler;
+import com.jodek.simplesleep.state.PlayerActivityTracker;
+import com.jodek.simplesleep.stats.SleepStatsStore;
+import com.jodek.simplesleep.systems.SleepCountingSystem;
+import com.jodek.simplesleep.systems.SleepEvaluationSystem;
+import com.jodek.simplesleep.systems.SleepStateChangeSystem;
+import com.jodek.simplesleep.systems.SleepTallyResource;
+import com.jodek.simplesleep.util.ErrorReporter;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
@@ -23,11 +47,19 @@ import java.util.logging.Level;
  */
 public class SimpleSleep extends JavaPlugin {
 
+    // How long shutdown waits for a running check
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000L;
+
     private static SimpleSleep instance;
     private SleepConfig config;
     private SleepEventHandler sleepEventHandler;
-    private ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> sleepCheckTask;
+    private SleepScheduler scheduler;
+    private SleepMetricsJmx metricsJmx;
+    private ConfigWatcher configWatcher;
+    private SleepStatsStore statsStore;
+
+    // Players on the whole server, the scheduler only runs while there are any
+    private final AtomicInteger onlinePlayers = new AtomicInteger();
 
     /**
      * Constructor - Called when plugin is loaded
@@ -37,6 +69,22 @@ public class SimpleSleep extends JavaPlugin {
         instance = this;
     }
 
+    /**
+     * Called before the plugin starts
+     * Systems have to be registered here so they are part of every world's store
+     */
+    @Override
+    protected void setup() {
+        getCommandRegistry().registerCommand(new SimpleSleepCommand(this));
+        getEntityStoreRegistry().registerSystem(new SleepStateChangeSystem(this));
+
+        // Counting during the world tick, idle unless executionMode is "ecs"
+        ResourceType<EntityStore, SleepTallyResource> tallyType =
+            getEntityStoreRegistry().registerResource(SleepTallyResource.class, SleepTallyResource::new);
+        getEntityStoreRegistry().registerSystem(new SleepCountingSystem(tallyType));
+        getEntityStoreRegistry().registerSystem(new SleepEvaluationSystem(this, tallyType));
+    }
+
     /**
      * Called when plugin starts
      */
@@ -46,33 +94,101 @@ public class SimpleSleep extends JavaPlugin {
 
         // Load config (config/SimpleSleep.json)
         Path configPath = Paths.get("config", "SimpleSleep.json");
-        config = new SleepConfig(configPath);
+        config = new SleepConfig(configPath, getLogger());
         config.load();
 
-        sleepEventHandler = new SleepEventHandler(this, config);
-
-        // Scheduler checks every second if enough players are sleeping
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        sleepCheckTask = scheduler.scheduleAtFixedRate(
-            this::checkSleepingPlayers,
-            1L, // Initial delay
-            1L, // Period
-            TimeUnit.SECONDS
-        );
-
-        String modeDescription = config.isUsingAmount()
-            ? config.getAmountRequired() + " players"
-            : (config.getPercentageRequired() * 100) + "%";
-        getLogger().at(Level.INFO).log("SimpleSleep ready! Sleep mode: " + modeDescription);
+        // Scheduler checks if enough players are sleeping, each world only when it is due
+        // (does nothing in event driven mode, the mode can be switched by reloading the config)
+        // Its thread only runs while players are online
+        scheduler = new SleepScheduler(this::checkSleepingPlayers, AdaptiveCheckPlanner.NODDING_OFF_DELAY_MILLIS);
+        sleepEventHandler = new SleepEventHandler(this, config.compile(), scheduler);
+
+        // Publish per-world metrics over JMX
+        metricsJmx = new SleepMetricsJmx(getLogger());
+        sleepEventHandler.getWorldStates().setListener(metricsJmx);
+
+        // Sleep history (config/SimpleSleep-stats.*), fed by the sleep events and written on its own thread
+        if (config.isStatistics()) {
+            statsStore = new SleepStatsStore(configPath.getParent(), getLogger());
+            statsStore.open();
+            sleepEventHandler.getEventBus().register(statsStore);
+        }
+
+        // Keep per-world sleep state in sync with loaded worlds
+        getEventRegistry().registerGlobal(AddWorldEvent.class,
+            event -> sleepEventHandler.getWorldStates().register(event.getWorld()));
+        getEventRegistry().registerGlobal(RemoveWorldEvent.class,
+            event -> sleepEventHandler.getWorldStates().unregister(event.getWorld()));
+
+        // Re-check a world when a player joins or leaves it (event driven mode only),
+        // sleep state changes come from SleepStateChangeSystem
+        getEventRegistry().registerGlobal(AddPlayerToWorldEvent.class,
+            event -> sleepEventHandler.onPlayersChanged(event.getWorld()));
+        getEventRegistry().registerGlobal(DrainPlayerFromWorldEvent.class,
+            event -> sleepEventHandler.onPlayersChanged(event.getWorld()));
+
+        // Interactions keep a player from counting as AFK, movement is sampled by the checks
+        PlayerActivityTracker activity = sleepEventHandler.getActivityTracker();
+        getEventRegistry().registerGlobal(PlayerMouseButtonEvent.class,
+            event -> activity.markActive(event.getPlayerRef().getUuid(), System.currentTimeMillis()));
+        getEventRegistry().registerAsyncGlobal(PlayerChatEvent.class, future -> future.thenApply(event -> {
+            activity.markActive(event.getSender().getUuid(), System.currentTimeMillis());
+            return event;
+        }));
+        getEventRegistry().registerGlobal(PlayerDisconnectEvent.class,
+            event -> activity.untrack(event.getPlayerRef().getUuid()));
+
+        // Start the scheduler with the first player and park it after the last one
+        getEventRegistry().registerGlobal(PlayerConnectEvent.class, event -> {
+            onlinePlayers.incrementAndGet();
+            scheduler.wake();
+        });
+        getEventRegistry().registerGlobal(PlayerDisconnectEvent.class, event -> {
+            if (onlinePlayers.updateAndGet(count -> Math.max(0, count - 1)) == 0) {
+                scheduler.park();
+            }
+        });
+
+        // Players that were online before the plugin started (e.g. after a plugin reload)
+        Universe universe = Universe.get();
+        if (universe != null && !universe.getPlayers().isEmpty()) {
+            onlinePlayers.set(universe.getPlayers().size());
+            scheduler.wake();
+        }
+
+        // Reload the config when the file changes
+        if (config.isHotReload()) {
+            configWatcher = new ConfigWatcher(configPath, this::reloadConfig, getLogger());
+            configWatcher.start();
+        }
+
+        getLogger().at(Level.INFO).log("SimpleSleep ready! Sleep mode: " + describeSettings(sleepEventHandler.getSettings()));
     }
 
-    // Checks every second
+    /**
+     * Reloads config/SimpleSleep.json and swaps the new settings in
+     * Called from the config watcher thread
+     */
+    private void reloadConfig() {
+        config.load();
+        SleepSettings settings = config.compile();
+        sleepEventHandler.applySettings(settings);
+        getLogger().at(Level.INFO).log("SimpleSleep config reloaded! Sleep mode: " + describeSettings(settings));
+    }
+
+    private static String describeSettings(SleepSettings settings) {
+        return settings.describeMode() + (settings.isEventDriven() ? " (event driven)" : "");
+    }
+
+    // Runs on every scheduler tick
     private void checkSleepingPlayers() {
+        ErrorReporter errors = sleepEventHandler.getErrorReporter();
         try {
             sleepEventHandler.checkAllWorlds();
         } catch (Exception e) {
-            getLogger().at(Level.WARNING).log("Error checking sleeping players: " + e.getMessage());
+            errors.report("all worlds", e);
         }
+        errors.flushIfDue(System.currentTimeMillis());
     }
 
     /**
@@ -82,16 +198,58 @@ public class SimpleSleep extends JavaPlugin {
     protected void shutdown() {
         getLogger().at(Level.INFO).log("SimpleSleep plugin disabled!");
 
-        if (sleepCheckTask != null) {
-            sleepCheckTask.cancel(false);
+        if (configWatcher != null) {
+            configWatcher.stop();
         }
         if (scheduler != null) {
-            scheduler.shutdown();
+            try {
+                // Lets a running check finish, but never holds up the server shutdown for long
+                if (!scheduler.shutdown(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    getLogger().at(Level.WARNING).log("SimpleSleep scheduler did not stop within " + SHUTDOWN_TIMEOUT_MILLIS + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (sleepEventHandler != null) {
+            // Repeats that were not summarized yet
+            sleepEventHandler.getErrorReporter().flush();
+        }
+
+        if (statsStore != null) {
+            // Writes what is still queued and compacts the log
+            try {
+                statsStore.close(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (metricsJmx != null && sleepEventHandler != null) {
+            metricsJmx.unregisterAll(sleepEventHandler.getWorldStates());
+        }
+
+        // Save config if needed, the saver thread is a daemon so wait for the write
+        if (config != null && config.isDirty()) {
+            try {
+                config.saveAsync().get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                getLogger().at(Level.WARNING).log("SimpleSleep config was not saved within " + SHUTDOWN_TIMEOUT_MILLIS + "ms");
+            } catch (ExecutionException e) {
+                getLogger().at(Level.WARNING).withCause(e.getCause()).log("Failed to save the SimpleSleep config");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        // Save config if needed
         if (config != null) {
-            config.save();
+            // Ends the saver thread, so a plugin reload doesn't leave it behind
+            try {
+                config.close(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -115,5 +273,12 @@ public class SimpleSleep extends JavaPlugin {
     public SleepEventHandler getSleepEventHandler() {
         return sleepEventHandler;
     }
+
+    /**
+     * Get the sleep statistics, null if they are disabled.
+     */
+    public SleepStatsStore getStatsStore() {
+        return statsStore;
+    }
 }
 
@@ -0,0 +1,51 @@
+package com.jodek.simplesleep.commands;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.AbstractCommand;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.jodek.simplesleep.SimpleSleep;
+import com.jodek.simplesleep.events.SleepEventHandler;
+import com.jodek.simplesleep.state.WorldSleepState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * /simplesleep lag
+ * Shows how long each world took to start a queued sleep check
+ */
+public class LagCommand extends AbstractCommand {
+
+    private final SimpleSleep plugin;
+
+    public LagCommand(SimpleSleep plugin) {
+        super("lag", "Shows the sleep check delay per world");
+        this.plugin = plugin;
+    }
+
+    @Nullable
+    @Override
+    protected CompletableFuture<Void> execute(@NotNull CommandContext context) {
+        SleepEventHandler handler = plugin.getSleepEventHandler();
+        if (handler == null) {
+            context.sendMessage(Message.raw("SimpleSleep is not running"));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long now = System.currentTimeMillis();
+        for (WorldSleepState state : handler.getWorldStates().getAll()) {
+            long nextCheckIn = Math.max(0L, state.getNextCheckMillis() - now);
+            context.sendMessage(Message.raw(state.getWorldName()
+                + ": last " + formatMillis(state.getLastCheckLagMicros())
+                + ", avg " + formatMillis(state.getAverageCheckLagMicros())
+                + ", max " + formatMillis(state.getMaxCheckLagMicros())
+                + ", next check in " + nextCheckIn + "ms"));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format("%.1fms", micros / 1000.0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.jodek.simplesleep.commands;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.AbstractCommand;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.jodek.simplesleep.SimpleSleep;
+import com.jodek.simplesleep.events.SleepEventHandler;
+import com.jodek.simplesleep.metrics.WorldSleepMetrics;
+import com.jodek.simplesleep.state.WorldSleepState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * /simplesleep metrics
+ * Dumps the sleep check metrics of every world
+ */
+public class MetricsCommand extends AbstractCommand {
+
+    private final SimpleSleep plugin;
+
+    public MetricsCommand(SimpleSleep plugin) {
+        super("metrics", "Shows sleep check metrics per world");
+        this.plugin = plugin;
+    }
+
+    @Nullable
+    @Override
+    protected CompletableFuture<Void> execute(@NotNull CommandContext context) {
+        SleepEventHandler handler = plugin.getSleepEventHandler();
+        if (handler == null) {
+            context.sendMessage(Message.raw("SimpleSleep is not running"));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        for (WorldSleepState state : handler.getWorldStates().getAll()) {
+            WorldSleepMetrics metrics = state.getMetrics();
+            context.sendMessage(Message.raw(state.getWorldName()
+                + ": checks " + metrics.getChecks()
+                + ", time avg " + metrics.getCheckDurationAverageMicros() + "us"
+                + " p99 " + metrics.getCheckDurationP99Micros() + "us"
+                + " max " + metrics.getCheckDurationMaxMicros() + "us"
+                + ", players scanned " + metrics.getPlayersScanned()
+                + ", lookups " + metrics.getComponentLookups()
+                + ", notifications " + metrics.getNotificationsSent()
+                + ", skips " + metrics.getSkipsTriggered()
+                + ", threshold to skip avg " + metrics.getThresholdToSkipAverageMicros() / 1000L + "ms"
+                + " max " + metrics.getThresholdToSkipMaxMicros() / 1000L + "ms"));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+}
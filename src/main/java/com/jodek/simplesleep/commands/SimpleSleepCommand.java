@@ -0,0 +1,31 @@
+package com.jodek.simplesleep.commands;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.AbstractCommand;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.jodek.simplesleep.SimpleSleep;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Admin command /simplesleep
+ * Groups the plugin's sub commands
+ */
+public class SimpleSleepCommand extends AbstractCommand {
+
+    public SimpleSleepCommand(SimpleSleep plugin) {
+        super("simplesleep", "SimpleSleep admin commands");
+        addSubCommand(new LagCommand(plugin));
+        addSubCommand(new MetricsCommand(plugin));
+        addSubCommand(new StatsCommand(plugin));
+    }
+
+    @Nullable
+    @Override
+    protected CompletableFuture<Void> execute(@NotNull CommandContext context) {
+        context.sendMessage(Message.raw("Usage: /simplesleep <lag|metrics|stats>"));
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.jodek.simplesleep.commands;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.AbstractCommand;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.jodek.simplesleep.SimpleSleep;
+import com.jodek.simplesleep.stats.SleepStatsStore;
+import com.jodek.simplesleep.stats.WorldSleepStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * /simplesleep stats
+ * Shows the sleep history of every world, read from the in-memory rollups
+ */
+public class StatsCommand extends AbstractCommand {
+
+    private static final int TOP_SLEEPERS = 3;
+
+    private final SimpleSleep plugin;
+
+    public StatsCommand(SimpleSleep plugin) {
+        super("stats", "Shows skipped nights and sleepers per world");
+        this.plugin = plugin;
+    }
+
+    @Nullable
+    @Override
+    protected CompletableFuture<Void> execute(@NotNull CommandContext context) {
+        SleepStatsStore stats = plugin.getStatsStore();
+        if (stats == null) {
+            context.sendMessage(Message.raw("SimpleSleep statistics are disabled"));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (stats.getWorlds().isEmpty()) {
+            context.sendMessage(Message.raw("No nights skipped yet"));
+        }
+        for (WorldSleepStats world : stats.getWorlds()) {
+            StringBuilder top = new StringBuilder();
+            for (Map.Entry<UUID, Long> entry : world.getTopSleepers(TOP_SLEEPERS)) {
+                if (!top.isEmpty()) {
+                    top.append(", ");
+                }
+                top.append(nameOf(entry.getKey())).append(" (").append(entry.getValue()).append(")");
+            }
+
+            context.sendMessage(Message.raw(world.getWorldName()
+                + ": nights skipped " + world.getNightsSkipped()
+                + ", wait avg " + world.getAverageWaitMillis() / 1000L + "s"
+                + " max " + world.getMaxWaitMillis() / 1000L + "s"
+                + ", sleepers " + world.getParticipants()
+                + (top.isEmpty() ? "" : ", most nights " + top)));
+        }
+        if (stats.getDroppedRecords() > 0L) {
+            context.sendMessage(Message.raw("Records dropped under load: " + stats.getDroppedRecords()));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Name of an online player, the UUID otherwise
+    private static String nameOf(UUID uuid) {
+        Universe universe = Universe.get();
+        PlayerRef player = universe != null ? universe.getPlayer(uuid) : null;
+        return player != null ? player.getUsername() : uuid.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.jodek.simplesleep.config;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Level;
+
+/**
+ * Watches the config file and calls back when it was changed
+ * Runs on its own daemon thread, several events in a short time (editors often write twice)
+ * result in a single reload
+ */
+public class ConfigWatcher {
+
+    // Wait for the file to settle before reloading
+    private static final long SETTLE_MILLIS = 250L;
+
+    private final Path configPath;
+    private final Runnable onChange;
+    private final HytaleLogger logger;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(Path configPath, Runnable onChange, HytaleLogger logger) {
+        this.configPath = configPath.toAbsolutePath();
+        this.onChange = onChange;
+        this.logger = logger;
+    }
+
+    public void start() {
+        Path directory = configPath.getParent();
+        if (directory == null) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.at(Level.WARNING).log("Config hot reload disabled, could not watch " + directory + ": " + e.getMessage());
+            return;
+        }
+
+        thread = new Thread(this::run, "SimpleSleep-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+                // Closing anyway
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        Path fileName = configPath.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = containsConfig(key, fileName);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+
+                // Swallow the rest of this burst of events
+                Thread.sleep(SETTLE_MILLIS);
+                WatchKey burst;
+                while ((burst = watchService.poll()) != null) {
+                    burst.pollEvents();
+                    burst.reset();
+                }
+
+                try {
+                    onChange.run();
+                } catch (Exception e) {
+                    logger.at(Level.WARNING).log("Failed to reload config: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher stopped
+        }
+    }
+
+    private static boolean containsConfig(WatchKey key, Path fileName) {
+        boolean found = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                found = true;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,35 @@
+package com.jodek.simplesleep.config;
+
+import java.util.List;
+
+/**
+ * Compiled world group whose worlds share one sleep vote
+ * Sleepers in any member world count for all of them, and the night is skipped in every member
+ */
+public final class LinkedWorldGroup {
+
+    private final String name;
+    private final List<String> worldNames;
+    private final SleepRules rules;
+
+    LinkedWorldGroup(String name, List<String> worldNames, SleepRules rules) {
+        this.name = name;
+        this.worldNames = List.copyOf(worldNames);
+        this.rules = rules;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getWorldNames() {
+        return worldNames;
+    }
+
+    /**
+     * Rules applied to the combined player counts of all member worlds
+     */
+    public SleepRules getRules() {
+        return rules;
+    }
+}
@@ -2,11 +2,22 @@ package com.jodek.simplesleep.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.jodek.simplesleep.policy.SleepPolicies;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 public class SleepConfig {
 
@@ -16,6 +27,21 @@ public class SleepConfig {
             .create();
 
     private final transient Path configPath;
+    private final transient HytaleLogger logger;
+
+    // One daemon thread for the saves of this config, so they are written in order and never block the caller
+    // Only started by the first save and stopped by close()
+    private final transient ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SimpleSleep-ConfigSaver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Values as last loaded (after validation) or written, null if unknown
+    private transient volatile String persistedJson;
+
+    // Set while the file on disk could not be loaded, so it is never overwritten with defaults
+    private transient volatile boolean loadFailed;
 
     // Config values
     public String mode = "percentage";
@@ -24,17 +50,72 @@ public class SleepConfig {
 
     public int amountRequired = 3;
 
+    public int allButCount = 1;
+
+    // Permission node -> weight of a sleeper with it, used by the weighted mode
+    public Map<String, Double> weights = new LinkedHashMap<>();
+
     public boolean showSleepingPlayers = true;
 
-    public String _comment = "Mode can be 'percentage' or 'amount'. If 'percentage', uses percentageRequired (0.0-1.0). If 'amount', uses amountRequired.";
+    public int messageDebounceMillis = 250;
+
+    public boolean eventDriven = false;
+
+    public String executionMode = "scheduler";
+
+    public boolean hotReload = true;
+
+    public boolean adaptiveChecks = true;
+
+    public boolean loadAwareChecks = true;
+
+    public int lagThresholdMillis = 50;
+
+    public String nightSkipMode = "instant";
+
+    public double accelerationGameMinutesPerSecond = 60.0;
+
+    public int timeUpdateIntervalMillis = 250;
+
+    public boolean afkExclusion = false;
+
+    public int afkThresholdSeconds = 300;
+
+    public boolean statistics = true;
+
+    // Per-world overrides, keyed by world name
+    public Map<String, SleepPolicyConfig> worlds = new LinkedHashMap<>();
+
+    // Named world groups with their own rules
+    public Map<String, WorldGroupConfig> worldGroups = new LinkedHashMap<>();
+
+    public String _comment = "Mode can be 'percentage', 'amount', 'weighted', 'minimum', 'all_but' or a mode added by another plugin. 'percentage' and 'weighted' use percentageRequired (0.0-1.0), 'amount' uses amountRequired, 'minimum' uses the lower of both, 'all_but' uses allButCount. 'weighted' lets sleepers with a permission from 'weights' count more. 'worlds' and 'worldGroups' override these per world.";
 
     /**
      * Creates a new config with the specified file path.
      *
      * @param configPath Path to the config.json file
+     * @param logger     Logger for load and save messages, usually the plugin's
      */
-    public SleepConfig(Path configPath) {
+    public SleepConfig(Path configPath, HytaleLogger logger) {
         this.configPath = configPath;
+        this.logger = logger;
+    }
+
+    /**
+     * Used by Gson, so keys missing from the file keep their defaults instead of being zeroed
+     */
+    private SleepConfig() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a new config that logs through its own class logger, for use outside the plugin
+     *
+     * @param configPath Path to the config.json file
+     */
+    public SleepConfig(Path configPath) {
+        this(configPath, HytaleLogger.forEnclosingClass());
     }
 
     public void load() {
@@ -42,8 +123,10 @@ public class SleepConfig {
 
         // Create config with defaults if it doesn't exist
         if (!file.exists()) {
-            System.out.println("[SimpleSleep] Config not found, creating default config...");
-            save();
+            logger.at(Level.INFO).log("Config not found, creating default config...");
+            loadFailed = false;
+            persistedJson = null;
+            saveAsync();
             return;
         }
 
@@ -54,45 +137,136 @@ public class SleepConfig {
 
             // Copy values from loaded config
             if (loaded != null) {
-                // Validate and set mode
-                if ("percentage".equalsIgnoreCase(loaded.mode) || "amount".equalsIgnoreCase(loaded.mode)) {
-                    this.mode = loaded.mode.toLowerCase();
-                } else {
-                    System.err.println("[SimpleSleep] WARNING: Invalid mode '" + loaded.mode + "'. Using 'percentage'. Valid modes: 'percentage' or 'amount'");
-                    this.mode = "percentage";
+                loadFailed = false;
+
+                // Keep the mode as written, compile() falls back to percentage while it is not registered
+                this.mode = loaded.mode != null ? loaded.mode : SleepPolicies.PERCENTAGE;
+                if (!SleepPolicies.isRegistered(mode)) {
+                    logger.at(Level.WARNING).log("Unknown mode '" + mode + "'. Using 'percentage' until a plugin registers it. Valid modes: 'percentage', 'amount', 'weighted', 'minimum', 'all_but' or a registered custom mode");
                 }
 
                 this.percentageRequired = clamp(loaded.percentageRequired, 0.0, 1.0);
                 this.amountRequired = Math.max(1, loaded.amountRequired); // At least 1 player
+                this.allButCount = Math.max(0, loaded.allButCount);
+                this.weights = validWeights(loaded.weights);
                 this.showSleepingPlayers = loaded.showSleepingPlayers;
-
-                System.out.println("[SimpleSleep] Config loaded successfully!");
-                if (isUsingAmount()) {
-                    System.out.println("[SimpleSleep] - Mode: Amount (" + amountRequired + " players)");
+                this.messageDebounceMillis = Math.max(0, loaded.messageDebounceMillis);
+                this.eventDriven = loaded.eventDriven;
+                if ("scheduler".equalsIgnoreCase(loaded.executionMode) || "ecs".equalsIgnoreCase(loaded.executionMode)) {
+                    this.executionMode = loaded.executionMode.toLowerCase();
+                } else {
+                    logger.at(Level.WARNING).log("Invalid executionMode '" + loaded.executionMode + "'. Using 'scheduler'. Valid modes: 'scheduler' or 'ecs'");
+                    this.executionMode = "scheduler";
+                }
+                this.hotReload = loaded.hotReload;
+                this.adaptiveChecks = loaded.adaptiveChecks;
+                this.loadAwareChecks = loaded.loadAwareChecks;
+                this.lagThresholdMillis = Math.max(1, loaded.lagThresholdMillis);
+                if ("instant".equalsIgnoreCase(loaded.nightSkipMode) || "accelerate".equalsIgnoreCase(loaded.nightSkipMode)) {
+                    this.nightSkipMode = loaded.nightSkipMode.toLowerCase();
                 } else {
-                    System.out.println("[SimpleSleep] - Mode: Percentage (" + (percentageRequired * 100) + "%)");
+                    logger.at(Level.WARNING).log("Invalid nightSkipMode '" + loaded.nightSkipMode + "'. Using 'instant'. Valid modes: 'instant' or 'accelerate'");
+                    this.nightSkipMode = "instant";
                 }
-                System.out.println("[SimpleSleep] - Show sleeping players: " + showSleepingPlayers);
+                this.accelerationGameMinutesPerSecond = loaded.accelerationGameMinutesPerSecond > 0.0
+                    ? loaded.accelerationGameMinutesPerSecond
+                    : 60.0;
+                this.timeUpdateIntervalMillis = Math.max(50, loaded.timeUpdateIntervalMillis);
+                this.afkExclusion = loaded.afkExclusion;
+                this.afkThresholdSeconds = Math.max(1, loaded.afkThresholdSeconds);
+                this.statistics = loaded.statistics;
+                this.worlds = loaded.worlds != null ? loaded.worlds : new LinkedHashMap<>();
+                this.worldGroups = loaded.worldGroups != null ? loaded.worldGroups : new LinkedHashMap<>();
+                worlds.values().forEach(this::validatePolicy);
+                worldGroups.values().forEach(this::validatePolicy);
+                warnHiddenOverrides();
+
+                // The values as loaded and validated, only later changes make the config dirty
+                persistedJson = GSON.toJson(this);
+
+                logger.at(Level.INFO).log("Config loaded successfully!");
+                logger.at(Level.INFO).log("- Mode: " + mode + " (" + compile().getDefaultRules().describe() + ")");
+                logger.at(Level.INFO).log("- Show sleeping players: " + showSleepingPlayers);
+                logger.at(Level.INFO).log("- Message debounce: " + messageDebounceMillis + "ms");
+                logger.at(Level.INFO).log("- Event driven checks: " + eventDriven);
+                logger.at(Level.INFO).log("- Execution mode: " + executionMode);
+                logger.at(Level.INFO).log("- Hot reload: " + hotReload);
+                logger.at(Level.INFO).log("- Adaptive checks: " + adaptiveChecks);
+                logger.at(Level.INFO).log("- Load aware checks: " + loadAwareChecks + " (lag threshold " + lagThresholdMillis + "ms)");
+                logger.at(Level.INFO).log("- Night skip: " + nightSkipMode + ("accelerate".equals(nightSkipMode)
+                    ? " (" + accelerationGameMinutesPerSecond + " game minutes/s, time updates every " + timeUpdateIntervalMillis + "ms)"
+                    : ""));
+                logger.at(Level.INFO).log("- AFK exclusion: " + afkExclusion + " (after " + afkThresholdSeconds + "s)");
+                logger.at(Level.INFO).log("- Statistics: " + statistics);
+                logger.at(Level.INFO).log("- World overrides: " + worlds.size() + ", world groups: " + worldGroups.size());
             } else {
-                System.err.println("[SimpleSleep] Config file is empty, using defaults!");
-                save();
+                logger.at(Level.WARNING).log("Config file is empty, keeping the current values!");
+                loadFailed = true;
             }
 
         } catch (IOException e) {
-            System.err.println("[SimpleSleep] Failed to read config file: " + e.getMessage());
-            System.err.println("[SimpleSleep] Using default values!");
-            save();
+            logger.at(Level.WARNING).log("Failed to read config file: " + e.getMessage());
+            logger.at(Level.WARNING).log("Keeping the current values, the file is left untouched!");
+            loadFailed = true;
         } catch (Exception e) {
-            System.err.println("[SimpleSleep] Failed to parse config (invalid JSON): " + e.getMessage());
-            System.err.println("[SimpleSleep] Using default values!");
-            save();
+            logger.at(Level.WARNING).log("Failed to parse config (invalid JSON): " + e.getMessage());
+            logger.at(Level.WARNING).log("Keeping the current values, the file is left untouched!");
+            loadFailed = true;
         }
     }
 
     /**
-     * Saves the current config
+     * Whether the values changed since they were loaded or saved
+     * Formatting, key order and comments of a hand-edited file don't make it dirty
      */
-    public void save() {
+    public boolean isDirty() {
+        return !GSON.toJson(this).equals(persistedJson);
+    }
+
+    /**
+     * Saves the current config on the saver thread
+     * The values are captured now, the file is written later
+     *
+     * @return Completes with true if the file was written, false if there was nothing to write
+     */
+    public CompletableFuture<Boolean> saveAsync() {
+        String json = GSON.toJson(this);
+        return CompletableFuture.supplyAsync(() -> write(json), saveExecutor);
+    }
+
+    /**
+     * Stops the saver thread after the queued saves are written, saveAsync() can't be used afterwards
+     *
+     * @return True if the queued saves finished within the timeout
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        saveExecutor.shutdown();
+        return saveExecutor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Saves the current config and waits for the write
+     *
+     * @return True if the file was written, false if there was nothing to write
+     */
+    public boolean save() {
+        return write(GSON.toJson(this));
+    }
+
+    /**
+     * Writes the JSON unless it equals the file's content or the file is broken
+     * Written to a temp file first and moved over the config, so the file is never half written
+     */
+    private synchronized boolean write(String json) {
+        if (loadFailed) {
+            // Keep the admin's broken file so it can be fixed
+            return false;
+        }
+        if (json.equals(persistedJson)) {
+            return false;
+        }
+
+        Path tempPath = configPath.resolveSibling(configPath.getFileName() + ".tmp");
         try {
             // Create parent directories if they don't exist
             Path parentDir = configPath.getParent();
@@ -100,29 +274,101 @@ public class SleepConfig {
                 Files.createDirectories(parentDir);
             }
 
-            // Convert to JSON and write to file
-            String json = GSON.toJson(this);
-            Files.writeString(configPath, json, StandardCharsets.UTF_8);
+            Files.writeString(tempPath, json, StandardCharsets.UTF_8);
+            try {
+                Files.move(tempPath, configPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, configPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            persistedJson = json;
 
-            System.out.println("[SimpleSleep] Config saved to: " + configPath);
+            logger.at(Level.INFO).log("Config saved to: " + configPath);
+            return true;
 
         } catch (IOException e) {
-            System.err.println("[SimpleSleep] Failed to save config: " + e.getMessage());
+            logger.at(Level.WARNING).log("Failed to save config: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+                // Left behind, overwritten by the next save
+            }
+            return false;
         }
     }
 
+    // Same limits as the global values, unknown modes are kept and skipped by compile() until registered
+    private void validatePolicy(SleepPolicyConfig policy) {
+        if (policy == null) {
+            return;
+        }
+        if (policy.mode != null && !SleepPolicies.isRegistered(policy.mode)) {
+            logger.at(Level.WARNING).log("Unknown mode '" + policy.mode + "' in world rules, ignoring it until a plugin registers it");
+        }
+        if (policy.percentageRequired != null) {
+            policy.percentageRequired = clamp(policy.percentageRequired, 0.0, 1.0);
+        }
+        if (policy.amountRequired != null) {
+            policy.amountRequired = Math.max(1, policy.amountRequired);
+        }
+        if (policy.allButCount != null) {
+            policy.allButCount = Math.max(0, policy.allButCount);
+        }
+        if (policy.weights != null) {
+            policy.weights = validWeights(policy.weights);
+        }
+    }
+
+    // A linked group votes with one set of rules, its members' own world rules are never used
+    private void warnHiddenOverrides() {
+        for (Map.Entry<String, WorldGroupConfig> group : worldGroups.entrySet()) {
+            WorldGroupConfig groupConfig = group.getValue();
+            if (groupConfig == null || !groupConfig.linked || groupConfig.worlds == null) {
+                continue;
+            }
+            for (String worldName : groupConfig.worlds) {
+                if (worlds.containsKey(worldName)) {
+                    logger.at(Level.WARNING).log("World '" + worldName + "' is in the linked group '" + group.getKey()
+                        + "', its own rules in 'worlds' are ignored and the group's rules are used");
+                }
+            }
+        }
+    }
+
+    // Drops weights that are missing or not positive
+    private Map<String, Double> validWeights(Map<String, Double> weights) {
+        Map<String, Double> valid = new LinkedHashMap<>();
+        if (weights == null) {
+            return valid;
+        }
+        weights.forEach((permission, weight) -> {
+            if (permission != null && weight != null && weight > 0.0) {
+                valid.put(permission, weight);
+            } else {
+                logger.at(Level.WARNING).log("Invalid weight " + weight + " for '" + permission + "', ignoring it");
+            }
+        });
+        return valid;
+    }
+
     private double clamp(double value, double min, double max) {
         if (value < min) {
-            System.err.println("[SimpleSleep] WARNING: percentageRequired (" + value + ") is below minimum (" + min + "), using " + min);
+            logger.at(Level.WARNING).log("percentageRequired (" + value + ") is below minimum (" + min + "), using " + min);
             return min;
         }
         if (value > max) {
-            System.err.println("[SimpleSleep] WARNING: percentageRequired (" + value + ") is above maximum (" + max + "), using " + max);
+            logger.at(Level.WARNING).log("percentageRequired (" + value + ") is above maximum (" + max + "), using " + max);
             return max;
         }
         return value;
     }
 
+    /**
+     * Compiles the current values into an immutable snapshot for the sleep checks
+     */
+    public SleepSettings compile() {
+        return new SleepSettings(this);
+    }
+
     public double getPercentageRequired() {
         return percentageRequired;
     }
@@ -131,16 +377,77 @@ public class SleepConfig {
         return amountRequired;
     }
 
+    public int getAllButCount() {
+        return allButCount;
+    }
+
+    public Map<String, Double> getWeights() {
+        return weights;
+    }
+
     public boolean isShowSleepingPlayers() {
         return showSleepingPlayers;
     }
 
+    public int getMessageDebounceMillis() {
+        return messageDebounceMillis;
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    public boolean isEcsTicking() {
+        return "ecs".equalsIgnoreCase(executionMode);
+    }
+
+    public boolean isHotReload() {
+        return hotReload;
+    }
+
+    public boolean isStatistics() {
+        return statistics;
+    }
+
+    public boolean isAdaptiveChecks() {
+        return adaptiveChecks;
+    }
+
+    public boolean isLoadAwareChecks() {
+        return loadAwareChecks;
+    }
+
+    public int getLagThresholdMillis() {
+        return lagThresholdMillis;
+    }
+
+    public boolean isAccelerateNight() {
+        return "accelerate".equalsIgnoreCase(nightSkipMode);
+    }
+
+    public double getAccelerationGameMinutesPerSecond() {
+        return accelerationGameMinutesPerSecond;
+    }
+
+    public int getTimeUpdateIntervalMillis() {
+        return timeUpdateIntervalMillis;
+    }
+
+    public boolean isAfkExclusion() {
+        return afkExclusion;
+    }
+
+    public int getAfkThresholdSeconds() {
+        return afkThresholdSeconds;
+    }
+
     public boolean isUsingAmount() {
         return "amount".equalsIgnoreCase(mode);
     }
 
     /**
      * Calculates how many players need to sleep based on the config mode
+     * Only knows 'percentage' and 'amount', the sleep checks use the policy of compile()
      *
      * @param totalPlayers Total number of online players
      * @return Number of players required to sleep
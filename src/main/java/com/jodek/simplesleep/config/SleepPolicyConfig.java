@@ -0,0 +1,20 @@
+package com.jodek.simplesleep.config;
+
+import java.util.Map;
+
+/**
+ * Sleep rules for a single world or a world group in config/SimpleSleep.json
+ * Values that are left out fall back to the group and then to the global values
+ */
+public class SleepPolicyConfig {
+
+    public String mode;
+
+    public Double percentageRequired;
+
+    public Integer amountRequired;
+
+    public Integer allButCount;
+
+    public Map<String, Double> weights;
+}
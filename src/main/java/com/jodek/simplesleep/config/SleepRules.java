@@ -0,0 +1,99 @@
+package com.jodek.simplesleep.config;
+
+import com.jodek.simplesleep.policy.MutableSleepCounts;
+import com.jodek.simplesleep.policy.SleepPolicies;
+import com.jodek.simplesleep.policy.SleepPolicy;
+
+import java.util.Map;
+
+/**
+ * Compiled sleep rules of one world
+ * Immutable, shared by every world that uses the same rules
+ */
+public final class SleepRules {
+
+    private final String mode;
+    private final double percentageRequired;
+    private final int amountRequired;
+    private final int allButCount;
+    private final Map<String, Double> weights;
+
+    // Created once from the values above, evaluated on every check
+    private final SleepPolicy policy;
+
+    SleepRules(String mode, double percentageRequired, int amountRequired, int allButCount,
+               Map<String, Double> weights) {
+        String normalized = SleepPolicies.normalize(mode);
+        this.mode = SleepPolicies.isRegistered(normalized) ? normalized : SleepPolicies.PERCENTAGE;
+        this.percentageRequired = percentageRequired;
+        this.amountRequired = amountRequired;
+        this.allButCount = allButCount;
+        this.weights = weights != null ? Map.copyOf(weights) : Map.of();
+        this.policy = SleepPolicies.create(this.mode, this);
+    }
+
+    /**
+     * Applies an override on top of these rules, unset values and unknown modes are kept
+     */
+    SleepRules with(SleepPolicyConfig override) {
+        if (override == null) {
+            return this;
+        }
+
+        return new SleepRules(
+            SleepPolicies.isRegistered(override.mode) ? override.mode : mode,
+            override.percentageRequired != null ? override.percentageRequired : percentageRequired,
+            override.amountRequired != null ? override.amountRequired : amountRequired,
+            override.allButCount != null ? override.allButCount : allButCount,
+            override.weights != null ? override.weights : weights
+        );
+    }
+
+    /**
+     * Name of the policy, lower case
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public double getPercentageRequired() {
+        return percentageRequired;
+    }
+
+    public int getAmountRequired() {
+        return amountRequired;
+    }
+
+    public int getAllButCount() {
+        return allButCount;
+    }
+
+    /**
+     * Weight of each permission node for the weighted policy
+     */
+    public Map<String, Double> getWeights() {
+        return weights;
+    }
+
+    public SleepPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Calculates how many players need to sleep from the total alone
+     * Meant for tools, the sleep checks pass their counts to the policy directly
+     *
+     * @param totalPlayers Total number of online players
+     * @return Number of players required to sleep
+     */
+    public int getRequiredSleepingPlayers(int totalPlayers) {
+        return policy.getRequiredSleepingPlayers(new MutableSleepCounts().set(0, 0, totalPlayers));
+    }
+
+    /**
+     * Short description for log output, e.g. "3 players" or "50.0%"
+     */
+    public String describe() {
+        return policy.describe();
+    }
+}
@@ -0,0 +1,217 @@
+package com.jodek.simplesleep.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, compiled form of SleepConfig
+ * Built once per (re)load and swapped in as a whole, so the sleep checks never see
+ * half of an old and half of a new config and never parse strings
+ */
+public final class SleepSettings {
+
+    // Global rules, used by every world without an override or group
+    private final SleepRules defaultRules;
+
+    // Rules of worlds with an override or group, resolved once per load
+    private final Map<String, SleepRules> worldRules;
+
+    // Linked group of each member world
+    private final Map<String, LinkedWorldGroup> linkedGroups;
+
+    private final boolean showSleepingPlayers;
+    private final int messageDebounceMillis;
+    private final boolean eventDriven;
+    private final boolean ecsTicking;
+    private final boolean adaptiveChecks;
+    private final boolean loadAwareChecks;
+    private final int lagThresholdMillis;
+    private final boolean accelerateNight;
+    private final double accelerationGameMillisPerRealMilli;
+    private final int timeUpdateIntervalMillis;
+    private final boolean afkExclusion;
+    private final long afkThresholdMillis;
+
+    SleepSettings(SleepConfig config) {
+        this.defaultRules = new SleepRules(
+            config.mode,
+            config.percentageRequired,
+            config.amountRequired,
+            config.allButCount,
+            config.weights
+        );
+        this.worldRules = resolveWorldRules(config, defaultRules);
+        this.linkedGroups = resolveLinkedGroups(config, defaultRules);
+        this.showSleepingPlayers = config.showSleepingPlayers;
+        this.messageDebounceMillis = config.messageDebounceMillis;
+        this.eventDriven = config.eventDriven;
+        this.ecsTicking = config.isEcsTicking();
+        this.adaptiveChecks = config.adaptiveChecks;
+        this.loadAwareChecks = config.loadAwareChecks;
+        this.lagThresholdMillis = config.lagThresholdMillis;
+        this.accelerateNight = config.isAccelerateNight();
+        // Game minutes per real second -> game millis per real milli
+        this.accelerationGameMillisPerRealMilli = config.accelerationGameMinutesPerSecond * 60.0;
+        this.timeUpdateIntervalMillis = config.timeUpdateIntervalMillis;
+        this.afkExclusion = config.afkExclusion;
+        this.afkThresholdMillis = config.afkThresholdSeconds * 1000L;
+    }
+
+    /**
+     * Resolves the rules of every world named in a group or override
+     * A world override wins over its group, the first group listing a world wins over later ones
+     */
+    private static Map<String, SleepRules> resolveWorldRules(SleepConfig config, SleepRules defaultRules) {
+        Map<String, SleepRules> rules = new HashMap<>();
+
+        if (config.worldGroups != null) {
+            for (WorldGroupConfig group : config.worldGroups.values()) {
+                if (group == null || group.worlds == null) {
+                    continue;
+                }
+                SleepRules groupRules = defaultRules.with(group);
+                for (String worldName : group.worlds) {
+                    rules.putIfAbsent(worldName, groupRules);
+                }
+            }
+        }
+
+        if (config.worlds != null) {
+            for (Map.Entry<String, SleepPolicyConfig> entry : config.worlds.entrySet()) {
+                SleepRules base = rules.getOrDefault(entry.getKey(), defaultRules);
+                rules.put(entry.getKey(), base.with(entry.getValue()));
+            }
+        }
+
+        return Map.copyOf(rules);
+    }
+
+    /**
+     * Maps every world of a linked group to that group
+     * A world can only be in one linked group, the first one listing it wins
+     */
+    private static Map<String, LinkedWorldGroup> resolveLinkedGroups(SleepConfig config, SleepRules defaultRules) {
+        Map<String, LinkedWorldGroup> groups = new HashMap<>();
+        if (config.worldGroups == null) {
+            return Map.of();
+        }
+
+        for (Map.Entry<String, WorldGroupConfig> entry : config.worldGroups.entrySet()) {
+            WorldGroupConfig group = entry.getValue();
+            if (group == null || !group.linked || group.worlds == null || group.worlds.isEmpty()) {
+                continue;
+            }
+            LinkedWorldGroup linked = new LinkedWorldGroup(entry.getKey(), group.worlds, defaultRules.with(group));
+            for (String worldName : group.worlds) {
+                groups.putIfAbsent(worldName, linked);
+            }
+        }
+
+        return Map.copyOf(groups);
+    }
+
+    public SleepRules getDefaultRules() {
+        return defaultRules;
+    }
+
+    /**
+     * Gets the sleep rules of a world
+     *
+     * @param worldName Name of the world
+     * @return The world's own rules, or the global ones
+     */
+    public SleepRules getRules(String worldName) {
+        SleepRules rules = worldRules.get(worldName);
+        return rules != null ? rules : defaultRules;
+    }
+
+    /**
+     * Gets the linked group of a world
+     *
+     * @return The group, or null if the world votes on its own
+     */
+    public LinkedWorldGroup getLinkedGroup(String worldName) {
+        return linkedGroups.get(worldName);
+    }
+
+    public boolean isShowSleepingPlayers() {
+        return showSleepingPlayers;
+    }
+
+    public int getMessageDebounceMillis() {
+        return messageDebounceMillis;
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Whether players are counted by the ECS systems during the world tick instead of the scheduler
+     */
+    public boolean isEcsTicking() {
+        return ecsTicking;
+    }
+
+    public boolean isAdaptiveChecks() {
+        return adaptiveChecks;
+    }
+
+    public boolean isLoadAwareChecks() {
+        return loadAwareChecks;
+    }
+
+    public int getLagThresholdMillis() {
+        return lagThresholdMillis;
+    }
+
+    /**
+     * Whether sleepers speed up the night instead of skipping it at once
+     */
+    public boolean isAccelerateNight() {
+        return accelerateNight;
+    }
+
+    /**
+     * Extra game time per real time while every player sleeps
+     */
+    public double getAccelerationGameMillisPerRealMilli() {
+        return accelerationGameMillisPerRealMilli;
+    }
+
+    /**
+     * Minimum time between two game time updates sent to the clients
+     */
+    public int getTimeUpdateIntervalMillis() {
+        return timeUpdateIntervalMillis;
+    }
+
+    /**
+     * Whether idle players are left out of the required count
+     */
+    public boolean isAfkExclusion() {
+        return afkExclusion;
+    }
+
+    public long getAfkThresholdMillis() {
+        return afkThresholdMillis;
+    }
+
+    /**
+     * Calculates how many players need to sleep with the global rules
+     *
+     * @param totalPlayers Total number of online players
+     * @return Number of players required to sleep
+     */
+    public int getRequiredSleepingPlayers(int totalPlayers) {
+        return defaultRules.getRequiredSleepingPlayers(totalPlayers);
+    }
+
+    /**
+     * Short description for log output, e.g. "3 players" or "50.0% (+2 world rules)"
+     */
+    public String describeMode() {
+        return defaultRules.describe() + (worldRules.isEmpty() ? "" : " (+" + worldRules.size() + " world rules)")
+            + (accelerateNight ? ", accelerated nights" : "");
+    }
+}
@@ -0,0 +1,15 @@
+package com.jodek.simplesleep.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Named group of worlds sharing the same sleep rules
+ */
+public class WorldGroupConfig extends SleepPolicyConfig {
+
+    public List<String> worlds = new ArrayList<>();
+
+    // Sleepers in any of the worlds count for all of them
+    public boolean linked = false;
+}
@@ -0,0 +1,138 @@
+package com.jodek.simplesleep.events;
+
+import com.jodek.simplesleep.config.LinkedWorldGroup;
+import com.jodek.simplesleep.policy.SleepCounts;
+
+/**
+ * Outcome of one sleep check, made by SleepEvaluator and carried out on the world
+ * The world state is already updated, only the world itself is left to change
+ */
+public final class SleepDecision {
+
+    /**
+     * What to do with the sleeping count notification
+     */
+    public enum Message {
+        // Nothing changed, or the count is not shown
+        NONE,
+        // Show the count now
+        SEND,
+        // Changed inside the debounce window, check again after getMessageDelayMillis()
+        DEFER
+    }
+
+    LinkedWorldGroup linkedGroup;
+    SleepCounts counts;
+    int sleepingPlayers;
+    int readyPlayers;
+    int requiredPlayers;
+
+    Message message = Message.NONE;
+    long messageDelayMillis;
+
+    boolean countChanged;
+    boolean thresholdMet;
+    boolean thresholdReached;
+    boolean memberChecks;
+    boolean startAcceleration;
+    boolean skip;
+    boolean skipMembers;
+    long thresholdToSkipMillis = -1L;
+
+    SleepDecision() {
+    }
+
+    /**
+     * Linked group the world votes in, null if it votes alone
+     */
+    public LinkedWorldGroup getLinkedGroup() {
+        return linkedGroup;
+    }
+
+    /**
+     * Counts the decision was made from, the whole group's for a linked world, null if nothing was counted
+     * Group counts are reused by the next check of the world
+     */
+    public SleepCounts getCounts() {
+        return counts;
+    }
+
+    /**
+     * Players in NoddingOff or Slumber
+     */
+    public int getSleepingPlayers() {
+        return sleepingPlayers;
+    }
+
+    /**
+     * Players that count towards the night skip
+     */
+    public int getReadyPlayers() {
+        return readyPlayers;
+    }
+
+    public int getRequiredPlayers() {
+        return requiredPlayers;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public long getMessageDelayMillis() {
+        return messageDelayMillis;
+    }
+
+    /**
+     * The sleeping count the listeners know about changed
+     */
+    public boolean isCountChanged() {
+        return countChanged;
+    }
+
+    public boolean isThresholdMet() {
+        return thresholdMet;
+    }
+
+    /**
+     * The threshold was met for the first time since the count last dropped below
+     */
+    public boolean isThresholdReached() {
+        return thresholdReached;
+    }
+
+    /**
+     * The group's counts changed, the other members have to be checked so they show them
+     */
+    public boolean isMemberChecks() {
+        return memberChecks;
+    }
+
+    /**
+     * The night has to be sped up and no step task is running yet
+     */
+    public boolean isStartAcceleration() {
+        return startAcceleration;
+    }
+
+    /**
+     * The night has to be skipped in this world
+     */
+    public boolean isSkip() {
+        return skip;
+    }
+
+    /**
+     * This world started the skip of its linked group, the other members have to be skipped too
+     */
+    public boolean isSkipMembers() {
+        return skipMembers;
+    }
+
+    /**
+     * Time from the threshold being met to this skip, negative if the night was not skipped
+     */
+    public long getThresholdToSkipMillis() {
+        return thresholdToSkipMillis;
+    }
+}
@@ -0,0 +1,280 @@
+package com.jodek.simplesleep.events;
+
+import com.jodek.simplesleep.config.LinkedWorldGroup;
+import com.jodek.simplesleep.config.SleepRules;
+import com.jodek.simplesleep.config.SleepSettings;
+import com.jodek.simplesleep.policy.SleepCounts;
+import com.jodek.simplesleep.policy.SleepPolicy;
+import com.jodek.simplesleep.scheduler.AdaptiveCheckPlanner;
+import com.jodek.simplesleep.state.LinkedGroupVote;
+import com.jodek.simplesleep.state.WorldSleepState;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides what a sleep check does with the counts of a world: rules, linked group vote,
+ * required sleepers, notification debounce, listener reports, night speed-up and skip
+ * Never touches the world itself, so the same code runs on the server and in the simulation
+ * Only called from the thread of the world that is evaluated
+ */
+public final class SleepEvaluator {
+
+    // Re-check after a player starts NoddingOff, once it counts as ready (event driven mode)
+    public static final long READY_RECHECK_DELAY_MILLIS = SleepSnapshot.NODDING_OFF_READY_MILLIS + 50L;
+
+    // Shared votes of linked world groups, rebuilt when the config is reloaded
+    private final Map<LinkedWorldGroup, LinkedGroupVote> groupVotes = new ConcurrentHashMap<>();
+
+    // Rules of a world (override, group or global), a linked group always uses the group's rules
+    private static SleepRules rulesOf(SleepSettings settings, LinkedWorldGroup linkedGroup, String worldName) {
+        return linkedGroup != null ? linkedGroup.getRules() : settings.getRules(worldName);
+    }
+
+    /**
+     * Policy whose weights a world's count sums up, null to count every sleeper as 1
+     * Weights are not pooled across a linked group, its members count every sleeper as 1
+     */
+    public static SleepPolicy countingPolicy(SleepSettings settings, String worldName) {
+        LinkedWorldGroup linkedGroup = settings.getLinkedGroup(worldName);
+        return linkedGroup == null ? settings.getRules(worldName).getPolicy() : null;
+    }
+
+    /**
+     * Drops the votes of all linked groups, members publish their counts again into new votes
+     */
+    public void clearVotes() {
+        groupVotes.clear();
+    }
+
+    /**
+     * Whether the ECS systems should start counting the world on this tick (ECS mode only)
+     */
+    public boolean shouldStartCount(WorldSleepState state, SleepSettings settings, long nowMillis) {
+        return state.isCheckPending() || (!settings.isEventDriven() && state.isCheckDue(nowMillis));
+    }
+
+    /**
+     * Marks the start of an ECS count, records the lag from the request (or the due time) to this tick
+     */
+    public void startCount(WorldSleepState state, long nowMillis, long nanoTime) {
+        if (!state.isCheckPending()) {
+            // Due by time, counts as queued once it became due
+            state.markCheckQueued(nanoTime - Math.max(0L, nowMillis - state.getNextCheckMillis()) * 1_000_000L);
+        }
+        state.startQueuedCheck(nanoTime);
+    }
+
+    /**
+     * The world has nothing to count (no players, or already in slumber)
+     * Leaves the group vote and stops a night speed-up, listeners see the count drop to 0
+     */
+    public SleepDecision idle(WorldSleepState state, SleepSettings settings, String worldName) {
+        SleepDecision decision = new SleepDecision();
+        decision.linkedGroup = settings.getLinkedGroup(worldName);
+
+        withdrawVote(state, decision.linkedGroup);
+        state.stopAcceleration();
+        state.setThresholdMetMillis(0L);
+
+        state.setThresholdReported(false);
+        if (state.getLastReportedSleepingCount() != 0) {
+            state.setLastReportedSleepingCount(0);
+            decision.countChanged = true;
+        }
+        return decision;
+    }
+
+    /**
+     * Evaluates the counts of a world
+     *
+     * @param snapshot Count of the world's own players
+     */
+    public SleepDecision evaluate(WorldSleepState state, SleepSettings settings, String worldName,
+                                  SleepSnapshot snapshot, long nowMillis) {
+        SleepDecision decision = new SleepDecision();
+
+        // Worlds of a linked group vote together
+        LinkedWorldGroup linkedGroup = settings.getLinkedGroup(worldName);
+        decision.linkedGroup = linkedGroup;
+        SleepPolicy policy = rulesOf(settings, linkedGroup, worldName).getPolicy();
+
+        SleepCounts counts = snapshot;
+        LinkedGroupVote vote = null;
+        if (linkedGroup != null) {
+            // Use the counts of the whole group instead of this world's
+            vote = groupVotes.computeIfAbsent(linkedGroup, group -> new LinkedGroupVote());
+            long packed = LinkedGroupVote.pack(snapshot.getDisplaySleepingPlayers(),
+                snapshot.getReadySleepingPlayers(), snapshot.getTotalPlayers());
+            // Let the other members show the new count
+            decision.memberChecks = state.getPublishedCounts() != packed;
+            long groupCounts = state.publishVote(vote, packed);
+
+            counts = state.getGroupCounts().set(LinkedGroupVote.display(groupCounts),
+                LinkedGroupVote.ready(groupCounts), LinkedGroupVote.total(groupCounts));
+        }
+
+        int required = policy.getRequiredSleepingPlayers(counts);
+        decision.counts = counts;
+        decision.sleepingPlayers = counts.getDisplaySleepingPlayers();
+        decision.readyPlayers = counts.getReadySleepingPlayers();
+        decision.requiredPlayers = required;
+
+        // Show message only if the count changed (display count includes NoddingOff)
+        if (settings.isShowSleepingPlayers()) {
+            planMessage(decision, state, settings.getMessageDebounceMillis(), nowMillis);
+        }
+
+        // At least one player has to be ready, idle players can bring the required count down to 0
+        boolean thresholdMet = counts.getReadySleepingPlayers() > 0 && policy.isThresholdMet(counts, required);
+        decision.thresholdMet = thresholdMet;
+        planReport(decision, state);
+
+        if (!thresholdMet) {
+            state.setThresholdMetMillis(0L);
+        } else if (state.getThresholdMetMillis() == 0L) {
+            state.setThresholdMetMillis(nowMillis);
+        }
+
+        if (settings.isAccelerateNight()) {
+            // Ready sleepers speed the night up by their share of the players, full speed once enough sleep
+            double fraction = thresholdMet
+                ? 1.0
+                : (double) counts.getReadySleepingPlayers() / Math.max(1, counts.getTotalPlayers());
+            if (fraction <= 0.0) {
+                state.stopAcceleration();
+            } else {
+                state.setAccelerationFraction(fraction);
+                decision.startAcceleration = !state.isAccelerating();
+            }
+            return decision;
+        }
+
+        // Trigger night skip only when enough players are ready
+        if (thresholdMet) {
+            if (vote != null) {
+                // Only one member starts the skip, it is then run on every member's own thread
+                if (!vote.tryStartSkip(nowMillis)) {
+                    return decision;
+                }
+                decision.skipMembers = true;
+            }
+
+            decision.skip = true;
+            decision.thresholdToSkipMillis = finishNight(state, nowMillis);
+        }
+
+        return decision;
+    }
+
+    /**
+     * Shows the sleeping count if it changed
+     * Changes inside the debounce window are merged into one update at the end of the window
+     */
+    private static void planMessage(SleepDecision decision, WorldSleepState state, int debounceMillis,
+                                    long nowMillis) {
+        int displaySleepingPlayers = decision.sleepingPlayers;
+        if (state.getLastSleepingCount() == displaySleepingPlayers) {
+            return;
+        }
+
+        if (displaySleepingPlayers == 0) {
+            // Nothing to show, just remember the count
+            state.setLastSleepingCount(0);
+            return;
+        }
+
+        long remaining = state.getLastMessageMillis() + debounceMillis - nowMillis;
+        if (remaining > 0L) {
+            // Show the latest count once the window is over
+            if (state.tryScheduleMessageFlush()) {
+                decision.message = SleepDecision.Message.DEFER;
+                decision.messageDelayMillis = remaining;
+            }
+            return;
+        }
+
+        decision.message = SleepDecision.Message.SEND;
+        state.setLastSleepingCount(displaySleepingPlayers);
+        state.markMessageSent(nowMillis);
+    }
+
+    // Tells the sleep listeners about changed counts and a newly reached threshold
+    private static void planReport(SleepDecision decision, WorldSleepState state) {
+        if (state.getLastReportedSleepingCount() != decision.sleepingPlayers) {
+            state.setLastReportedSleepingCount(decision.sleepingPlayers);
+            decision.countChanged = true;
+        }
+
+        if (state.isThresholdReported() != decision.thresholdMet) {
+            state.setThresholdReported(decision.thresholdMet);
+            decision.thresholdReached = decision.thresholdMet;
+        }
+    }
+
+    // Takes this world's counts out of its linked group while it has nothing to count
+    private void withdrawVote(WorldSleepState state, LinkedWorldGroup linkedGroup) {
+        if (linkedGroup != null) {
+            LinkedGroupVote vote = groupVotes.computeIfAbsent(linkedGroup, group -> new LinkedGroupVote());
+            state.publishVote(vote, 0L);
+        }
+    }
+
+    /**
+     * Works out how far an accelerated night moves on, called by the step task on the world thread
+     * No faster than the time update interval, and capped so a world that stalled for a while doesn't jump
+     *
+     * @return Game milliseconds to move the time forward, 0 to skip this step, -1 if the speed-up was stopped
+     */
+    public long planNightStep(WorldSleepState state, SleepSettings settings, long nowMillis) {
+        double fraction = state.getAccelerationFraction();
+        if (!settings.isAccelerateNight() || fraction <= 0.0) {
+            state.stopAcceleration();
+            return -1L;
+        }
+
+        long elapsed = nowMillis - state.getLastAccelerationStepMillis();
+        // Steps that piled up while the world was busy would only send the clients another time update
+        if (elapsed < settings.getTimeUpdateIntervalMillis() / 2) {
+            return 0L;
+        }
+        state.setLastAccelerationStepMillis(nowMillis);
+
+        return (long) (settings.getAccelerationGameMillisPerRealMilli() * fraction * Math.min(elapsed, 1000L));
+    }
+
+    /**
+     * Records the end of a night, skipped (also as a linked member) or reached by a speed-up
+     * The time it took is measured from the first check that saw the threshold met
+     *
+     * @return Time from the threshold being met to the end of the night, negative if this world never saw it met
+     */
+    public long finishNight(WorldSleepState state, long nowMillis) {
+        long thresholdMet = state.getThresholdMetMillis();
+        state.setThresholdMetMillis(0L);
+
+        long thresholdToSkipMillis = thresholdMet > 0L ? nowMillis - thresholdMet : -1L;
+        state.getMetrics().recordSkip(thresholdToSkipMillis);
+        return thresholdToSkipMillis;
+    }
+
+    /**
+     * Records the check's metrics and plans the next check of the world
+     *
+     * @param snapshot   Result of the check, null if the world was not counted
+     * @param delayMillis Delay until the next check before the load backoff
+     */
+    public void completeCheck(WorldSleepState state, SleepSettings settings, SleepSnapshot snapshot,
+                              long durationNanos, long delayMillis, long nowMillis) {
+        if (snapshot != null) {
+            state.getMetrics().recordCheck(durationNanos,
+                snapshot.getTotalPlayers() + snapshot.getIdlePlayers(), snapshot.getComponentLookups());
+        }
+
+        long delay = delayMillis;
+        if (settings.isLoadAwareChecks()) {
+            delay = AdaptiveCheckPlanner.applyLoadBackoff(delay, state, settings.getLagThresholdMillis());
+        }
+        state.setNextCheckMillis(nowMillis + delay);
+    }
+}
@@ -0,0 +1,114 @@
+package com.jodek.simplesleep.events;
+
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Publishes the results of the sleep checks to other plugins, so they don't have to poll
+ * PlayerSomnolence and WorldSomnolence themselves
+ *
+ * Listeners are kept in a copy-on-write array: registering copies it, dispatching reads it once
+ * without locking or allocating. A listener that throws is logged and does not stop the others
+ */
+public class SleepEventBus {
+
+    private static final SleepListener[] NO_LISTENERS = new SleepListener[0];
+
+    private final HytaleLogger logger;
+
+    // Replaced as a whole on every change
+    private volatile SleepListener[] listeners = NO_LISTENERS;
+
+    public SleepEventBus(HytaleLogger logger) {
+        this.logger = logger;
+    }
+
+    public synchronized void register(SleepListener listener) {
+        if (listener == null) {
+            return;
+        }
+        SleepListener[] current = listeners;
+        SleepListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * @return True if the listener was registered
+     */
+    public synchronized boolean unregister(SleepListener listener) {
+        SleepListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                SleepListener[] updated = new SleepListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = current.length == 1 ? NO_LISTENERS : updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void fireSleepCountChanged(World world, int sleepingPlayers, int requiredPlayers) {
+        SleepListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].onSleepCountChanged(world, sleepingPlayers, requiredPlayers);
+            } catch (RuntimeException e) {
+                logFailure(current[i], "onSleepCountChanged", e);
+            }
+        }
+    }
+
+    void fireThresholdReached(World world, int readyPlayers, int requiredPlayers) {
+        SleepListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].onThresholdReached(world, readyPlayers, requiredPlayers);
+            } catch (RuntimeException e) {
+                logFailure(current[i], "onThresholdReached", e);
+            }
+        }
+    }
+
+    void fireNightSkipped(World world, Instant wakeUp) {
+        SleepListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].onNightSkipped(world, wakeUp);
+            } catch (RuntimeException e) {
+                logFailure(current[i], "onNightSkipped", e);
+            }
+        }
+    }
+
+    void fireWakeUp(World world, List<Ref<EntityStore>> players, Instant wakeUp) {
+        SleepListener[] current = listeners;
+        if (current.length == 0) {
+            return;
+        }
+
+        List<Ref<EntityStore>> readOnly = Collections.unmodifiableList(players);
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].onWakeUp(world, readOnly, wakeUp);
+            } catch (RuntimeException e) {
+                logFailure(current[i], "onWakeUp", e);
+            }
+        }
+    }
+
+    private void logFailure(SleepListener listener, String method, RuntimeException e) {
+        logger.at(Level.WARNING).log("Sleep listener " + listener.getClass().getName() + "." + method
+            + " failed: " + e.getMessage());
+    }
+}
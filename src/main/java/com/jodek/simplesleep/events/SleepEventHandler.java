@@ -2,9 +2,9 @@ package com.jodek.simplesleep.events;
 
 import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSleep;
 import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSomnolence;
-import com.hypixel.hytale.builtin.beds.sleep.resources.WorldSleep;
 import com.hypixel.hytale.builtin.beds.sleep.resources.WorldSlumber;
 import com.hypixel.hytale.builtin.beds.sleep.resources.WorldSomnolence;
+import com.hypixel.hytale.component.ComponentType;
 import com.hypixel.hytale.component.Ref;
 import com.hypixel.hytale.component.Store;
 import com.hypixel.hytale.server.core.asset.type.gameplay.SleepConfig;
@@ -14,15 +14,26 @@ import com.hypixel.hytale.server.core.universe.Universe;
 import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import com.jodek.simplesleep.SimpleSleep;
+import com.jodek.simplesleep.config.LinkedWorldGroup;
+import com.jodek.simplesleep.config.SleepSettings;
+import com.jodek.simplesleep.scheduler.AdaptiveCheckPlanner;
+import com.jodek.simplesleep.scheduler.SleepScheduler;
+import com.jodek.simplesleep.state.PlayerActivityTracker;
+import com.jodek.simplesleep.state.WorldSleepRegistry;
+import com.jodek.simplesleep.state.WorldSleepState;
+import com.jodek.simplesleep.util.ErrorReporter;
 import com.jodek.simplesleep.util.MessageUtil;
+import com.jodek.simplesleep.util.SleepMessageCache;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 /**
@@ -31,29 +42,171 @@ import java.util.logging.Level;
  */
 public class SleepEventHandler {
 
-    private final com.jodek.simplesleep.config.SleepConfig config;
+    // Time between two summaries of repeated check errors
+    private static final long ERROR_SUMMARY_INTERVAL_MILLIS = 60_000L;
 
-    // Tracks the last sleeping player count per world to avoid spam
-    private final Map<String, Integer> lastSleepingCount = new HashMap<>();
+    // Swapped as a whole on config reload, read once per check
+    private volatile SleepSettings settings;
+    private final SleepScheduler scheduler;
 
-    public SleepEventHandler(SimpleSleep plugin, com.jodek.simplesleep.config.SleepConfig config) {
-        this.config = config;
+    // Per-world state, tracks the last sleeping player count per world to avoid spam
+    private final WorldSleepRegistry worldStates = new WorldSleepRegistry();
+
+    // Decides what a check does with the counts, shared with the simulation
+    private final SleepEvaluator evaluator = new SleepEvaluator();
+
+    // Last activity of every player, only read when AFK exclusion is on
+    private final PlayerActivityTracker activityTracker = new PlayerActivityTracker();
+
+    // Reuses the sleeping count notification packets
+    private final SleepMessageCache messageCache = new SleepMessageCache();
+
+    // Sleep events for other plugins
+    private final SleepEventBus eventBus;
+
+    // Failed checks, logged once per world and exception type and then summarized
+    private final ErrorReporter errors;
+
+    public SleepEventHandler(SimpleSleep plugin, SleepSettings settings, SleepScheduler scheduler) {
+        this.settings = settings;
+        this.scheduler = scheduler;
+        this.eventBus = new SleepEventBus(plugin.getLogger());
+        this.errors = new ErrorReporter(plugin.getLogger(), ERROR_SUMMARY_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Called when a player's sleep state changes (event driven mode only)
+     * Re-checks the affected world, plus once more when a NoddingOff player becomes ready
+     */
+    public void onSleepStateChanged(World world, PlayerSleep newState) {
+        if (!settings.isEventDriven() || world == null) {
+            return;
+        }
+
+        requestCheck(world);
+
+        if (newState instanceof PlayerSleep.NoddingOff) {
+            scheduleCheck(world, SleepEvaluator.READY_RECHECK_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Called when a player joins or leaves a world (event driven mode only)
+     * The required count depends on the player count, so the world is re-checked
+     */
+    public void onPlayersChanged(World world) {
+        if (!settings.isEventDriven() || world == null) {
+            return;
+        }
+
+        requestCheck(world);
+    }
+
+    /**
+     * Queues a check on the world's own thread
+     * At most one check per world is queued, further requests are dropped until it starts
+     * so a lagging world doesn't build up a backlog of checks
+     */
+    private void requestCheck(World world) {
+        // Also reached from delayed tasks, which must not bring back a removed world
+        WorldSleepState state = worldStates.find(world);
+        if (state == null || !state.tryQueueCheck(System.nanoTime())) {
+            return;
+        }
+
+        if (settings.isEcsTicking()) {
+            // Picked up by SleepEvaluationSystem on the world's next tick
+            return;
+        }
+
+        try {
+            world.execute(() -> {
+                state.startQueuedCheck(System.nanoTime());
+                try {
+                    checkWorldSleep(world, state);
+                } catch (RuntimeException e) {
+                    errors.report(world.getName(), e);
+                }
+            });
+        } catch (RuntimeException e) {
+            state.clearCheckPending();
+            throw e;
+        }
+    }
+
+    // Queues a check after the given delay
+    private void scheduleCheck(World world, long delayMillis) {
+        scheduler.schedule(() -> requestCheck(world), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replaces the settings used by all following checks
+     */
+    public void applySettings(SleepSettings settings) {
+        this.settings = settings;
+        // Groups may have changed, members publish their counts again into new votes
+        evaluator.clearVotes();
+    }
+
+    public SleepSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Gets the reporter that collects failed checks
+     */
+    public ErrorReporter getErrorReporter() {
+        return errors;
     }
 
+    /**
+     * Gets the bus other plugins register their SleepListener with
+     */
+    public SleepEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Gets the activity of every player, fed by interaction events
+     */
+    public PlayerActivityTracker getActivityTracker() {
+        return activityTracker;
+    }
+
+    /**
+     * Gets the sleep state of every loaded world
+     */
+    public WorldSleepRegistry getWorldStates() {
+        return worldStates;
+    }
 
+    /**
+     * Queues a check for every world that is due
+     * Called by the scheduler, worlds far away from sleep time are skipped
+     */
     public void checkAllWorlds() {
+        if (settings.isEventDriven() || settings.isEcsTicking()) {
+            // Worlds are checked on sleep state changes or by the world tick instead
+            return;
+        }
+
         Universe universe = Universe.get();
         if (universe == null) {
             return;
         }
 
+        long now = System.currentTimeMillis();
         for (World world : universe.getWorlds().values()) {
-            world.execute(() -> checkWorldSleep(world));
+            WorldSleepState state = worldStates.get(world);
+            if (state.isCheckDue(now)) {
+                requestCheck(world);
+            }
         }
     }
 
-    private void checkWorldSleep(World world) {
-        if (world == null) {
+    private void checkWorldSleep(World world, WorldSleepState state) {
+        if (world == null || worldStates.find(world) != state) {
+            // Removed since the check was queued
             return;
         }
 
@@ -64,109 +217,259 @@ public class SleepEventHandler {
             return;
         }
 
-        WorldSomnolence worldSomnolence = store.getResource(WorldSomnolence.getResourceType());
+        // Same settings for the whole check, even if the config is reloaded meanwhile
+        runCheck(world, store, state, this.settings, null);
+    }
 
-        WorldSleep worldSleep = worldSomnolence.getState();
-        if (worldSleep instanceof WorldSlumber) {
+    /**
+     * Called by SleepEvaluationSystem on every world tick, after SleepCountingSystem (ECS mode only)
+     * Evaluates the count made during this tick and starts a new one when the world is due
+     */
+    public void onWorldTick(Store<EntityStore> store, SleepTally tally) {
+        SleepSettings settings = this.settings;
+        if (!settings.isEcsTicking()) {
+            if (tally.isCounting()) {
+                // Switched to the scheduler by a config reload
+                tally.finish();
+            }
             return;
         }
 
+        World world = store.getExternalData().getWorld();
+        WorldSleepState state = worldStates.get(world);
+        if (tally.isCounting()) {
+            try {
+                // Players without a PlayerSomnolence were not visited by the counting system
+                tally.addMissing(world.getPlayerRefs().size());
+                runCheck(world, store, state, settings, tally.finish());
+            } catch (RuntimeException e) {
+                errors.report(world.getName(), e);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (evaluator.shouldStartCount(state, settings, now)) {
+            evaluator.startCount(state, now, System.nanoTime());
+            tally.begin(SleepEvaluator.countingPolicy(settings, world.getName()),
+                settings.isAfkExclusion() ? activityTracker : null, settings.getAfkThresholdMillis(), now);
+        }
+    }
+
+    /**
+     * Evaluates a world and plans its next check
+     *
+     * @param counted Count made by the ECS systems, null to count the world's players now
+     */
+    private void runCheck(World world, Store<EntityStore> store, WorldSleepState state, SleepSettings settings,
+                          SleepSnapshot counted) {
+        long checkStart = System.nanoTime();
+        SleepSnapshot snapshot = evaluateWorld(world, store, state, settings, counted);
+        long duration = System.nanoTime() - checkStart;
+
+        long now = System.currentTimeMillis();
+        long delay = settings.isAdaptiveChecks()
+            ? AdaptiveCheckPlanner.planDelay(world, store, state, snapshot, now)
+            : AdaptiveCheckPlanner.NIGHT_DELAY_MILLIS;
+        evaluator.completeCheck(state, settings, snapshot, duration, delay, now);
+    }
+
+    /**
+     * Counts the sleeping players of a world and skips the night if enough are sleeping
+     * What to do is decided by the SleepEvaluator, this carries it out on the world
+     *
+     * @param counted Count made by the ECS systems, null to count the world's players now
+     * @return The snapshot that was counted, null if the world was not counted
+     */
+    private SleepSnapshot evaluateWorld(World world, Store<EntityStore> store, WorldSleepState state,
+                                        SleepSettings settings, SleepSnapshot counted) {
+        WorldSomnolence worldSomnolence = store.getResource(WorldSomnolence.getResourceType());
+
         Collection<PlayerRef> playerRefs = world.getPlayerRefs();
-        if (playerRefs.isEmpty()) {
-            return;
+        if (worldSomnolence.getState() instanceof WorldSlumber || playerRefs.isEmpty()) {
+            apply(world, store, worldSomnolence, state, settings, null,
+                evaluator.idle(state, settings, world.getName()));
+            return null;
         }
 
-        int totalPlayers = playerRefs.size();
+        SleepSnapshot snapshot = counted;
+        if (snapshot == null) {
+            snapshot = SleepSnapshot.capture(store, playerRefs, SleepEvaluator.countingPolicy(settings, world.getName()),
+                settings.isAfkExclusion() ? activityTracker : null, settings.getAfkThresholdMillis());
+        }
 
-        // Count for display (includes NoddingOff)
-        int displaySleepingPlayers = countSleepingPlayersForDisplay(store, playerRefs);
+        SleepDecision decision = evaluator.evaluate(state, settings, world.getName(), snapshot,
+            System.currentTimeMillis());
+        apply(world, store, worldSomnolence, state, settings, snapshot, decision);
+        return snapshot;
+    }
 
-        // Count for night skip (only Slumber)
-        int readySleepingPlayers = countReadySleepingPlayers(store, playerRefs);
+    // Carries out a decision of the evaluator on the world
+    private void apply(World world, Store<EntityStore> store, WorldSomnolence worldSomnolence,
+                       WorldSleepState state, SleepSettings settings, SleepSnapshot snapshot,
+                       SleepDecision decision) {
+        if (decision.isMemberChecks()) {
+            requestMemberChecks(decision.getLinkedGroup(), world);
+        }
 
-        int required = config.getRequiredSleepingPlayers(totalPlayers);
+        if (decision.getMessage() == SleepDecision.Message.SEND) {
+            int sent = MessageUtil.broadcastNotification(world,
+                messageCache.get(decision.getSleepingPlayers(), decision.getRequiredPlayers()));
+            state.getMetrics().recordNotifications(sent);
+        } else if (decision.getMessage() == SleepDecision.Message.DEFER) {
+            scheduler.schedule(() -> {
+                state.clearMessageFlush();
+                requestCheck(world);
+            }, decision.getMessageDelayMillis(), TimeUnit.MILLISECONDS);
+        }
 
-        // Show message only if the count changed
-        if (config.isShowSleepingPlayers()) {
-            String worldName = world.getName();
-            Integer lastCount = lastSleepingCount.get(worldName);
+        if (decision.isCountChanged()) {
+            eventBus.fireSleepCountChanged(world, decision.getSleepingPlayers(), decision.getRequiredPlayers());
+        }
+        if (decision.isThresholdReached()) {
+            eventBus.fireThresholdReached(world, decision.getReadyPlayers(), decision.getRequiredPlayers());
+        }
 
-            // Show message if count changed
-            if (lastCount == null || lastCount != displaySleepingPlayers) {
-                if (displaySleepingPlayers > 0) {
-                    String message = displaySleepingPlayers + "/" + required + " players sleeping";
-                    MessageUtil.broadcastActionBar(Universe.get(), message);
-                }
-                lastSleepingCount.put(worldName, displaySleepingPlayers);
-            }
+        if (decision.isStartAcceleration()) {
+            startAcceleration(world, state, settings);
         }
 
-        // Trigger night skip only when enough players are in Slumber
-        if (readySleepingPlayers >= required) {
-            triggerSlumber(store, world, worldSomnolence);
+        if (decision.isSkipMembers()) {
+            skipMemberWorlds(decision.getLinkedGroup(), world);
+        }
+        if (decision.isSkip()) {
+            triggerSlumber(store, world, worldSomnolence, snapshot);
         }
     }
 
-    /**
-     * Counts sleeping players for display
-     * Includes both NoddingOff and Slumber states
-     */
-    private int countSleepingPlayersForDisplay(Store<EntityStore> store, Collection<PlayerRef> playerRefs) {
-        int sleepingCount = 0;
+    // Queues a check on every other loaded member of the group
+    private void requestMemberChecks(LinkedWorldGroup linkedGroup, World source) {
+        forEachOtherMember(linkedGroup, source, this::requestCheck);
+    }
 
-        for (PlayerRef playerRef : playerRefs) {
-            Ref<EntityStore> entityRef = playerRef.getReference();
-            if (entityRef == null) {
-                continue;
-            }
+    // Skips the night on every other loaded member of the group, each on its own thread
+    private void skipMemberWorlds(LinkedWorldGroup linkedGroup, World source) {
+        forEachOtherMember(linkedGroup, source, member -> member.execute(() -> skipLinkedMember(member)));
+    }
+
+    private void forEachOtherMember(LinkedWorldGroup linkedGroup, World source, Consumer<World> action) {
+        Universe universe = Universe.get();
+        if (universe == null) {
+            return;
+        }
 
-            PlayerSomnolence somnolence = store.getComponent(entityRef, PlayerSomnolence.getComponentType());
-            if (somnolence == null) {
+        for (String worldName : linkedGroup.getWorldNames()) {
+            if (worldName.equals(source.getName())) {
                 continue;
             }
+            World member = universe.getWorld(worldName);
+            if (member != null) {
+                action.accept(member);
+            }
+        }
+    }
 
-            PlayerSleep sleepState = somnolence.getSleepState();
+    // Runs on the member's thread, wakes its own sleepers
+    private void skipLinkedMember(World world) {
+        WorldSleepState state = worldStates.find(world);
+        if (state == null) {
+            return;
+        }
 
-            // Count NoddingOff and Slumber for display
-            if (sleepState instanceof PlayerSleep.Slumber || sleepState instanceof PlayerSleep.NoddingOff) {
-                sleepingCount++;
-            }
+        Store<EntityStore> store = world.getEntityStore().getStore();
+        if (store == null) {
+            return;
         }
 
-        return sleepingCount;
+        WorldSomnolence worldSomnolence = store.getResource(WorldSomnolence.getResourceType());
+        if (worldSomnolence.getState() instanceof WorldSlumber) {
+            return;
+        }
+
+        SleepSnapshot snapshot = SleepSnapshot.capture(store, world.getPlayerRefs(), null, null, 0L);
+        triggerSlumber(store, world, worldSomnolence, snapshot);
+
+        evaluator.finishNight(state, System.currentTimeMillis());
     }
 
     /**
-     * Counts players ready for night skip
-     * Only includes Slumber state
+     * Starts the speed-up of the night
+     * The game time is stepped forward by a repeating task, no faster than the time update interval
      */
-    private int countReadySleepingPlayers(Store<EntityStore> store, Collection<PlayerRef> playerRefs) {
-        int sleepingCount = 0;
+    private void startAcceleration(World world, WorldSleepState state, SleepSettings settings) {
+        long interval = settings.getTimeUpdateIntervalMillis();
+        ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(() -> {
+            try {
+                world.execute(() -> {
+                    try {
+                        stepNight(world);
+                    } catch (RuntimeException e) {
+                        state.stopAcceleration();
+                        errors.report(world.getName(), e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // World is shutting down
+                state.stopAcceleration();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        if (task != null) {
+            state.startAcceleration(task, System.currentTimeMillis());
+        }
+    }
 
-        for (PlayerRef playerRef : playerRefs) {
-            Ref<EntityStore> entityRef = playerRef.getReference();
-            if (entityRef == null) continue;
+    /**
+     * Moves the game time forward by the real time since the last step, scaled by the sleeping share
+     * Runs on the world thread, ends the night like a skip once the wake up time is reached
+     */
+    private void stepNight(World world) {
+        WorldSleepState state = worldStates.find(world);
+        if (state == null) {
+            // Removed, its speed-up was stopped with it
+            return;
+        }
+        SleepSettings settings = this.settings;
 
-            PlayerSomnolence somnolence = store.getComponent(entityRef, PlayerSomnolence.getComponentType());
-            if (somnolence == null) continue;
+        Store<EntityStore> store = world.getEntityStore().getStore();
+        if (store == null) {
+            state.stopAcceleration();
+            return;
+        }
 
-            PlayerSleep sleepState = somnolence.getSleepState();
+        WorldSomnolence worldSomnolence = store.getResource(WorldSomnolence.getResourceType());
+        if (worldSomnolence.getState() instanceof WorldSlumber) {
+            state.stopAcceleration();
+            return;
+        }
 
-            if (sleepState instanceof PlayerSleep.Slumber) {
-                sleepingCount++;
-            }
+        long now = System.currentTimeMillis();
+        long advance = evaluator.planNightStep(state, settings, now);
+        if (advance <= 0L) {
+            return;
+        }
 
-            else if (sleepState instanceof PlayerSleep.NoddingOff noddingOff) {
-                if (Instant.now().isAfter(noddingOff.realTimeStart().plusMillis(3150L))) {
-                    sleepingCount++;
-                }
-            }
+        WorldTimeResource timeResource = store.getResource(WorldTimeResource.getResourceType());
+        float wakeUpHour = world.getGameplayConfig().getWorldConfig().getSleepConfig().getWakeUpHour();
+        Instant gameTime = timeResource.getGameTime();
+        Instant wakeUp = computeWakeupInstant(gameTime, wakeUpHour);
+
+        Instant next = gameTime.plusMillis(advance);
+        if (next.isBefore(wakeUp)) {
+            timeResource.setGameTime(next, world, store);
+            return;
         }
-        return sleepingCount;
+
+        // Morning reached, wake everyone up like a night skip
+        state.stopAcceleration();
+        SleepSnapshot snapshot = SleepSnapshot.capture(store, world.getPlayerRefs(), null, null, 0L);
+        timeResource.setGameTime(wakeUp, world, store);
+        eventBus.fireNightSkipped(world, wakeUp);
+        wakeUpSleepers(store, world, snapshot.getSleepers(), wakeUp);
+        evaluator.finishNight(state, now);
     }
 
     // Triggers night skip
-    private void triggerSlumber(Store<EntityStore> store, World world, WorldSomnolence worldSomnolence) {
+    private void triggerSlumber(Store<EntityStore> store, World world, WorldSomnolence worldSomnolence,
+                                SleepSnapshot snapshot) {
         // Check to not trigger twice
         if (worldSomnolence.getState() instanceof WorldSlumber) {
             return;
@@ -184,27 +487,34 @@ public class SleepEventHandler {
 
         // Sets game time to morning (this triggers the night skip)
         timeResource.setGameTime(wakeUp, world, store);
+        eventBus.fireNightSkipped(world, wakeUp);
 
-        // Wake up all sleeping players
-        for (PlayerRef playerRef : world.getPlayerRefs()) {
-            Ref<EntityStore> entityRef = playerRef.getReference();
-            if (entityRef == null) {
-                continue;
-            }
+        // Wake up the players that were sleeping in the snapshot
+        wakeUpSleepers(store, world, snapshot.getSleepers(), wakeUp);
+    }
 
-            PlayerSomnolence somnolence = store.getComponent(entityRef, PlayerSomnolence.getComponentType());
-            if (somnolence == null) {
-                continue;
-            }
+    /**
+     * Sets all sleepers to MorningWakeUp in one pass
+     * Every sleeper gets the same wake up component, it is never changed after creation
+     * (the beds module replaces PlayerSomnolence instead of modifying it)
+     */
+    private void wakeUpSleepers(Store<EntityStore> store, World world, List<Ref<EntityStore>> sleepers,
+                                Instant wakeUp) {
+        if (sleepers.isEmpty()) {
+            return;
+        }
 
-            PlayerSleep sleepState = somnolence.getSleepState();
+        PlayerSomnolence wakeUpState = new PlayerSomnolence(new PlayerSleep.MorningWakeUp(wakeUp));
+        ComponentType<EntityStore, PlayerSomnolence> somnolenceType = PlayerSomnolence.getComponentType();
 
-            // Set sleeping players to MorningWakeUp state
-            if (sleepState instanceof PlayerSleep.NoddingOff || sleepState instanceof PlayerSleep.Slumber) {
-                PlayerSomnolence wakeUpState = new PlayerSomnolence(new PlayerSleep.MorningWakeUp(wakeUp));
-                store.putComponent(entityRef, PlayerSomnolence.getComponentType(), wakeUpState);
+        for (int i = 0, size = sleepers.size(); i < size; i++) {
+            Ref<EntityStore> entityRef = sleepers.get(i);
+            if (entityRef.isValid()) {
+                store.putComponent(entityRef, somnolenceType, wakeUpState);
             }
         }
+
+        eventBus.fireWakeUp(world, sleepers, wakeUp);
     }
 
     // Calculates wakeup time based on wakeup hour
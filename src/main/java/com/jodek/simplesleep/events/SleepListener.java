@@ -0,0 +1,53 @@
+package com.jodek.simplesleep.events;
+
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Receives the sleep events of every world, register it with SleepEventBus
+ * Called on the world's own thread right after the sleep check, so listeners must be quick
+ * and may use the world's store directly
+ * Every method does nothing by default, override the ones you need
+ */
+public interface SleepListener {
+
+    /**
+     * The number of players in NoddingOff or Slumber changed
+     * Worlds of a linked group report the counts of the whole group
+     *
+     * @param sleepingPlayers Players in bed
+     * @param requiredPlayers Players needed to skip the night
+     */
+    default void onSleepCountChanged(World world, int sleepingPlayers, int requiredPlayers) {
+    }
+
+    /**
+     * Enough players are ready to end the night, called once until the count drops below again
+     *
+     * @param readyPlayers    Players that count towards the night skip
+     * @param requiredPlayers Players needed to skip the night
+     */
+    default void onThresholdReached(World world, int readyPlayers, int requiredPlayers) {
+    }
+
+    /**
+     * The night was skipped, or an accelerated night reached the morning
+     *
+     * @param wakeUp Game time the world was set to
+     */
+    default void onNightSkipped(World world, Instant wakeUp) {
+    }
+
+    /**
+     * Sleepers were woken up after the night ended
+     *
+     * @param players Entities that were set to MorningWakeUp, read only
+     * @param wakeUp  Game time the world was set to
+     */
+    default void onWakeUp(World world, List<Ref<EntityStore>> players, Instant wakeUp) {
+    }
+}
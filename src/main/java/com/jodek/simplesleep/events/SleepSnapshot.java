@@ -0,0 +1,123 @@
+package com.jodek.simplesleep.events;
+
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSomnolence;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.policy.SleepCounts;
+import com.jodek.simplesleep.policy.SleepPolicy;
+import com.jodek.simplesleep.state.PlayerActivityTracker;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sleep state of one world, taken in a single pass over its players
+ * Captured from the world's player list, or counted by the ECS systems through a SleepTally
+ * Shared by the display counter, the night skip check and the wake up
+ */
+public final class SleepSnapshot implements SleepCounts {
+
+    // Time a player has to be NoddingOff before counting as ready
+    public static final long NODDING_OFF_READY_MILLIS = 3150L;
+
+    private final int totalPlayers;
+    private final int displaySleepingPlayers;
+    private final int readySleepingPlayers;
+    private final double readySleepingWeight;
+    private final int idlePlayers;
+    private final int componentLookups;
+    private final List<Ref<EntityStore>> sleepers;
+
+    SleepSnapshot(int totalPlayers, int displaySleepingPlayers, int readySleepingPlayers,
+                  double readySleepingWeight, int idlePlayers, int componentLookups,
+                  List<Ref<EntityStore>> sleepers) {
+        this.totalPlayers = totalPlayers;
+        this.displaySleepingPlayers = displaySleepingPlayers;
+        this.readySleepingPlayers = readySleepingPlayers;
+        this.readySleepingWeight = readySleepingWeight;
+        this.idlePlayers = idlePlayers;
+        this.componentLookups = componentLookups;
+        this.sleepers = sleepers;
+    }
+
+    /**
+     * Reads every player's PlayerSomnolence once, with a random access lookup per player
+     * Display count includes NoddingOff and Slumber, ready count only Slumber
+     * and players that have been NoddingOff long enough
+     *
+     * Awake players that have been idle for longer than idleMillis are left out of the total
+     *
+     * @param policy    Policy whose weights are summed for the ready players, null to count every player as 1
+     * @param activity  Activity of the players, null to count idle players too
+     * @param idleMillis Time without movement or interaction after which an awake player is idle
+     */
+    static SleepSnapshot capture(Store<EntityStore> store, Collection<PlayerRef> playerRefs, SleepPolicy policy,
+                                 PlayerActivityTracker activity, long idleMillis) {
+        SleepTally tally = new SleepTally();
+        tally.begin(policy, activity, idleMillis, System.currentTimeMillis());
+
+        for (PlayerRef playerRef : playerRefs) {
+            Ref<EntityStore> entityRef = playerRef.getReference();
+            if (entityRef == null) {
+                tally.addUncounted();
+                continue;
+            }
+
+            PlayerSomnolence somnolence = store.getComponent(entityRef, PlayerSomnolence.getComponentType());
+            tally.addLookup();
+            tally.add(store, playerRef, entityRef, somnolence);
+        }
+
+        return tally.finish();
+    }
+
+    /**
+     * Players that count towards the required sleepers, idle players are not included
+     */
+    @Override
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    /**
+     * Players in NoddingOff or Slumber
+     */
+    @Override
+    public int getDisplaySleepingPlayers() {
+        return displaySleepingPlayers;
+    }
+
+    /**
+     * Players that count towards the night skip
+     */
+    @Override
+    public int getReadySleepingPlayers() {
+        return readySleepingPlayers;
+    }
+
+    @Override
+    public double getReadySleepingWeight() {
+        return readySleepingWeight;
+    }
+
+    /**
+     * Awake players that were left out of the total for being idle
+     */
+    public int getIdlePlayers() {
+        return idlePlayers;
+    }
+
+    public int getComponentLookups() {
+        return componentLookups;
+    }
+
+    /**
+     * Players that are NoddingOff or in Slumber and have to be woken up on a night skip
+     * Random access list, in the order the players were scanned
+     */
+    public List<Ref<EntityStore>> getSleepers() {
+        return sleepers;
+    }
+}
@@ -0,0 +1,190 @@
+package com.jodek.simplesleep.events;
+
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSleep;
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSomnolence;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.math.vector.Vector3d;
+import com.hypixel.hytale.server.core.modules.entity.component.TransformComponent;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.policy.SleepPolicy;
+import com.jodek.simplesleep.state.PlayerActivityTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Adds up the sleep state of one world player by player and turns it into a SleepSnapshot
+ * Fed either from the world's player list or by SleepCountingSystem while the world ticks,
+ * the simulation feeds the same counters with scripted players
+ * Not thread safe, only used on the world thread
+ */
+public final class SleepTally {
+
+    private boolean counting;
+
+    private SleepPolicy policy;
+    private boolean weighted;
+    private PlayerActivityTracker activity;
+    private long nowMillis;
+    private long idleCutoff;
+    private long readyCutoffMillis;
+
+    private int players;
+    private int displayCount;
+    private int readyCount;
+    private double readyWeight;
+    private int idleCount;
+    private int lookups;
+    private List<Ref<EntityStore>> sleepers;
+
+    /**
+     * Starts a new count, the clock is read once for the whole count
+     *
+     * @param policy     Policy whose weights are summed for the ready players, null to count every player as 1
+     * @param activity   Activity of the players, null to count idle players too
+     * @param idleMillis Time without movement or interaction after which an awake player is idle
+     */
+    public void begin(SleepPolicy policy, PlayerActivityTracker activity, long idleMillis, long nowMillis) {
+        this.counting = true;
+        this.policy = policy;
+        this.weighted = policy != null && policy.usesWeights();
+        this.activity = activity;
+        this.nowMillis = nowMillis;
+        this.idleCutoff = nowMillis - idleMillis;
+        this.readyCutoffMillis = nowMillis - SleepSnapshot.NODDING_OFF_READY_MILLIS;
+
+        players = 0;
+        displayCount = 0;
+        readyCount = 0;
+        readyWeight = 0.0;
+        idleCount = 0;
+        lookups = 0;
+        sleepers = new ArrayList<>();
+    }
+
+    /**
+     * Whether a count was started and not finished yet
+     */
+    public boolean isCounting() {
+        return counting;
+    }
+
+    /**
+     * Counts a player without an entity, it still adds to the total
+     */
+    public void addUncounted() {
+        players++;
+    }
+
+    public void addLookup() {
+        lookups++;
+    }
+
+    /**
+     * Counts the players the count did not reach as awake, their activity is not known
+     *
+     * @param totalPlayers Players in the world
+     */
+    public void addMissing(int totalPlayers) {
+        players = Math.max(players, totalPlayers);
+    }
+
+    /**
+     * Counts one player
+     * Display count includes NoddingOff and Slumber, ready count only Slumber
+     * and players that have been NoddingOff long enough
+     *
+     * @param somnolence The player's sleep state, null if it has none (counts as awake)
+     */
+    public void add(Store<EntityStore> store, PlayerRef playerRef, Ref<EntityStore> entityRef,
+                    PlayerSomnolence somnolence) {
+        PlayerSleep sleepState = somnolence != null ? somnolence.getSleepState() : null;
+        if (sleepState instanceof PlayerSleep.Slumber) {
+            addSlumber(weighted ? policy.getWeight(playerRef) : 1.0, entityRef);
+        } else if (sleepState instanceof PlayerSleep.NoddingOff noddingOff) {
+            long startMillis = noddingOff.realTimeStart().toEpochMilli();
+            // Weights are only looked up for players that count
+            addNoddingOff(startMillis, weighted && isReady(startMillis) ? policy.getWeight(playerRef) : 1.0, entityRef);
+        } else if (activity != null) {
+            lookups++;
+            TransformComponent transform = store.getComponent(entityRef, TransformComponent.getComponentType());
+            if (transform == null) {
+                addAwake();
+            } else {
+                Vector3d position = transform.getPosition();
+                addAwake(playerRef.getUuid(), position.getX(), position.getY(), position.getZ());
+            }
+        } else {
+            addAwake();
+        }
+    }
+
+    /**
+     * Counts a player in Slumber, always ready
+     *
+     * @param weight Weight of the player, only used by weighted policies
+     */
+    public void addSlumber(double weight, Ref<EntityStore> entityRef) {
+        players++;
+        displayCount++;
+        readyCount++;
+        readyWeight += weight;
+        sleepers.add(entityRef);
+    }
+
+    /**
+     * Counts a NoddingOff player, ready once it has been NoddingOff long enough
+     *
+     * @param startMillis System time the player started NoddingOff
+     * @param weight      Weight of the player, only used by weighted policies
+     */
+    public void addNoddingOff(long startMillis, double weight, Ref<EntityStore> entityRef) {
+        players++;
+        displayCount++;
+        if (isReady(startMillis)) {
+            readyCount++;
+            readyWeight += weight;
+        }
+        sleepers.add(entityRef);
+    }
+
+    /**
+     * Counts an awake player whose activity is not known, it is never idle
+     */
+    public void addAwake() {
+        players++;
+    }
+
+    /**
+     * Counts an awake player, movement since the last check counts as activity
+     * Left out of the total if it has been idle for too long (only when an activity tracker is set)
+     */
+    public void addAwake(UUID uuid, double x, double y, double z) {
+        players++;
+        if (activity != null && activity.sampleMovement(uuid, x, y, z, nowMillis) < idleCutoff) {
+            idleCount++;
+        }
+    }
+
+    private boolean isReady(long noddingOffStartMillis) {
+        return noddingOffStartMillis < readyCutoffMillis;
+    }
+
+    /**
+     * Ends the count, idle players are left out of the total
+     */
+    public SleepSnapshot finish() {
+        counting = false;
+        SleepSnapshot snapshot = new SleepSnapshot(players - idleCount, displayCount, readyCount, readyWeight,
+            idleCount, lookups, sleepers);
+
+        // Don't keep the policy or the sleepers alive until the next count
+        policy = null;
+        activity = null;
+        sleepers = null;
+        return snapshot;
+    }
+}
@@ -0,0 +1,74 @@
+package com.jodek.simplesleep.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed bucket histogram for durations in microseconds
+ * Recording is lock-free and does not allocate
+ */
+public class LatencyHistogram {
+
+    // Upper bounds of the buckets, the last bucket holds everything above
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+        10L, 25L, 50L, 100L, 250L, 500L, 1_000L, 2_500L, 5_000L, 10_000L,
+        25_000L, 50_000L, 100_000L, 250_000L, 500_000L, 1_000_000L, 5_000_000L
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long micros) {
+        long value = Math.max(0L, micros);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sumMicros.addAndGet(value);
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getAverageMicros() {
+        long total = count.get();
+        return total == 0L ? 0L : sumMicros.get() / total;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile
+     *
+     * @param percentile 0.0-1.0
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0L) {
+            return 0L;
+        }
+
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return BUCKET_BOUNDS_MICROS[i];
+            }
+        }
+        return maxMicros.get();
+    }
+
+    private static int bucketIndex(long micros) {
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            if (micros <= BUCKET_BOUNDS_MICROS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MICROS.length;
+    }
+}
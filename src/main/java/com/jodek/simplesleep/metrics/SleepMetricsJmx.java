@@ -0,0 +1,62 @@
+package com.jodek.simplesleep.metrics;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.jodek.simplesleep.state.WorldSleepRegistry;
+import com.jodek.simplesleep.state.WorldSleepState;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+
+/**
+ * Publishes the metrics of every loaded world as a JMX MBean
+ */
+public class SleepMetricsJmx implements WorldSleepRegistry.Listener {
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final HytaleLogger logger;
+
+    public SleepMetricsJmx(HytaleLogger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onWorldAdded(WorldSleepState state) {
+        try {
+            ObjectName name = objectName(state);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(state.getMetrics(), name);
+            }
+        } catch (JMException e) {
+            logger.at(Level.WARNING).log("Failed to register sleep metrics for " + state.getWorldName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onWorldRemoved(WorldSleepState state) {
+        try {
+            ObjectName name = objectName(state);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.at(Level.WARNING).log("Failed to unregister sleep metrics for " + state.getWorldName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the MBeans of all worlds, called on plugin shutdown
+     */
+    public void unregisterAll(WorldSleepRegistry registry) {
+        for (WorldSleepState state : registry.getAll()) {
+            onWorldRemoved(state);
+        }
+    }
+
+    private static ObjectName objectName(WorldSleepState state) throws JMException {
+        return new ObjectName("com.jodek.simplesleep:type=WorldSleepMetrics,world="
+            + ObjectName.quote(state.getWorldName()));
+    }
+}
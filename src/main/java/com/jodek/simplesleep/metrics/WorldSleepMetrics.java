@@ -0,0 +1,97 @@
+package com.jodek.simplesleep.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the sleep checks of one world
+ */
+public class WorldSleepMetrics implements WorldSleepMetricsMXBean {
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder playersScanned = new LongAdder();
+    private final LongAdder componentLookups = new LongAdder();
+    private final LongAdder notificationsSent = new LongAdder();
+    private final LongAdder skipsTriggered = new LongAdder();
+
+    private final LatencyHistogram checkDuration = new LatencyHistogram();
+    private final LatencyHistogram thresholdToSkip = new LatencyHistogram();
+
+    public void recordCheck(long durationNanos, int players, int lookups) {
+        checks.increment();
+        playersScanned.add(players);
+        componentLookups.add(lookups);
+        checkDuration.record(durationNanos / 1000L);
+    }
+
+    public void recordNotifications(int recipients) {
+        notificationsSent.add(recipients);
+    }
+
+    /**
+     * @param thresholdToSkipMillis Time since the threshold was met, negative if unknown
+     */
+    public void recordSkip(long thresholdToSkipMillis) {
+        skipsTriggered.increment();
+        if (thresholdToSkipMillis >= 0L) {
+            thresholdToSkip.record(thresholdToSkipMillis * 1000L);
+        }
+    }
+
+    public LatencyHistogram getCheckDuration() {
+        return checkDuration;
+    }
+
+    public LatencyHistogram getThresholdToSkip() {
+        return thresholdToSkip;
+    }
+
+    @Override
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    @Override
+    public long getPlayersScanned() {
+        return playersScanned.sum();
+    }
+
+    @Override
+    public long getComponentLookups() {
+        return componentLookups.sum();
+    }
+
+    @Override
+    public long getNotificationsSent() {
+        return notificationsSent.sum();
+    }
+
+    @Override
+    public long getSkipsTriggered() {
+        return skipsTriggered.sum();
+    }
+
+    @Override
+    public long getCheckDurationAverageMicros() {
+        return checkDuration.getAverageMicros();
+    }
+
+    @Override
+    public long getCheckDurationP99Micros() {
+        return checkDuration.getPercentileMicros(0.99);
+    }
+
+    @Override
+    public long getCheckDurationMaxMicros() {
+        return checkDuration.getMaxMicros();
+    }
+
+    @Override
+    public long getThresholdToSkipAverageMicros() {
+        return thresholdToSkip.getAverageMicros();
+    }
+
+    @Override
+    public long getThresholdToSkipMaxMicros() {
+        return thresholdToSkip.getMaxMicros();
+    }
+}
@@ -0,0 +1,28 @@
+package com.jodek.simplesleep.metrics;
+
+/**
+ * JMX view of one world's sleep check metrics
+ * Registered as com.jodek.simplesleep:type=WorldSleepMetrics,world=&lt;name&gt;
+ */
+public interface WorldSleepMetricsMXBean {
+
+    long getChecks();
+
+    long getPlayersScanned();
+
+    long getComponentLookups();
+
+    long getNotificationsSent();
+
+    long getSkipsTriggered();
+
+    long getCheckDurationAverageMicros();
+
+    long getCheckDurationP99Micros();
+
+    long getCheckDurationMaxMicros();
+
+    long getThresholdToSkipAverageMicros();
+
+    long getThresholdToSkipMaxMicros();
+}
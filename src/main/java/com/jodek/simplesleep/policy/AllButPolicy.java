@@ -0,0 +1,23 @@
+package com.jodek.simplesleep.policy;
+
+/**
+ * Everyone except a fixed number of players, at least one player always has to sleep
+ */
+public final class AllButPolicy implements SleepPolicy {
+
+    private final int allButCount;
+
+    public AllButPolicy(int allButCount) {
+        this.allButCount = allButCount;
+    }
+
+    @Override
+    public int getRequiredSleepingPlayers(SleepCounts counts) {
+        return Math.max(1, counts.getTotalPlayers() - allButCount);
+    }
+
+    @Override
+    public String describe() {
+        return "all but " + allButCount + " players";
+    }
+}
@@ -0,0 +1,23 @@
+package com.jodek.simplesleep.policy;
+
+/**
+ * Fixed number of players, but never more than are online
+ */
+public final class AmountPolicy implements SleepPolicy {
+
+    private final int amountRequired;
+
+    public AmountPolicy(int amountRequired) {
+        this.amountRequired = amountRequired;
+    }
+
+    @Override
+    public int getRequiredSleepingPlayers(SleepCounts counts) {
+        return Math.min(amountRequired, counts.getTotalPlayers());
+    }
+
+    @Override
+    public String describe() {
+        return amountRequired + " players";
+    }
+}
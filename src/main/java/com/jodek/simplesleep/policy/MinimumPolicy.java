@@ -0,0 +1,28 @@
+package com.jodek.simplesleep.policy;
+
+/**
+ * Whichever of the percentage and the amount needs fewer players
+ * Keeps big servers at a fixed amount while small ones use the percentage
+ */
+public final class MinimumPolicy implements SleepPolicy {
+
+    private final double percentageRequired;
+    private final int amountRequired;
+
+    public MinimumPolicy(double percentageRequired, int amountRequired) {
+        this.percentageRequired = percentageRequired;
+        this.amountRequired = amountRequired;
+    }
+
+    @Override
+    public int getRequiredSleepingPlayers(SleepCounts counts) {
+        int totalPlayers = counts.getTotalPlayers();
+        int byPercentage = (int) Math.ceil(totalPlayers * percentageRequired);
+        return Math.min(byPercentage, Math.min(amountRequired, totalPlayers));
+    }
+
+    @Override
+    public String describe() {
+        return "min(" + (percentageRequired * 100) + "%, " + amountRequired + " players)";
+    }
+}
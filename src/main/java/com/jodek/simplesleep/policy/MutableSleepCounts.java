@@ -0,0 +1,46 @@
+package com.jodek.simplesleep.policy;
+
+/**
+ * Reusable SleepCounts for values that are not a single world's snapshot, e.g. a linked group's vote
+ * Not thread safe, each instance belongs to one world thread
+ */
+public final class MutableSleepCounts implements SleepCounts {
+
+    private int totalPlayers;
+    private int displaySleepingPlayers;
+    private int readySleepingPlayers;
+    private double readySleepingWeight;
+
+    /**
+     * Sets all counts, the weight is taken from the ready count
+     *
+     * @return This instance
+     */
+    public MutableSleepCounts set(int displaySleepingPlayers, int readySleepingPlayers, int totalPlayers) {
+        this.displaySleepingPlayers = displaySleepingPlayers;
+        this.readySleepingPlayers = readySleepingPlayers;
+        this.readySleepingWeight = readySleepingPlayers;
+        this.totalPlayers = totalPlayers;
+        return this;
+    }
+
+    @Override
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    @Override
+    public int getDisplaySleepingPlayers() {
+        return displaySleepingPlayers;
+    }
+
+    @Override
+    public int getReadySleepingPlayers() {
+        return readySleepingPlayers;
+    }
+
+    @Override
+    public double getReadySleepingWeight() {
+        return readySleepingWeight;
+    }
+}
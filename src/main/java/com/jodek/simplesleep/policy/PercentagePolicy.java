@@ -0,0 +1,23 @@
+package com.jodek.simplesleep.policy;
+
+/**
+ * Share of the players in the world
+ */
+public final class PercentagePolicy implements SleepPolicy {
+
+    private final double percentageRequired;
+
+    public PercentagePolicy(double percentageRequired) {
+        this.percentageRequired = percentageRequired;
+    }
+
+    @Override
+    public int getRequiredSleepingPlayers(SleepCounts counts) {
+        return (int) Math.ceil(counts.getTotalPlayers() * percentageRequired);
+    }
+
+    @Override
+    public String describe() {
+        return (percentageRequired * 100) + "%";
+    }
+}
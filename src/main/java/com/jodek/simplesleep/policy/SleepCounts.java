@@ -0,0 +1,26 @@
+package com.jodek.simplesleep.policy;
+
+/**
+ * Sleeping player counts a SleepPolicy works with
+ * Either one world's snapshot or the combined counts of a linked group
+ */
+public interface SleepCounts {
+
+    int getTotalPlayers();
+
+    /**
+     * Players in NoddingOff or Slumber
+     */
+    int getDisplaySleepingPlayers();
+
+    /**
+     * Players that count towards the night skip
+     */
+    int getReadySleepingPlayers();
+
+    /**
+     * Summed weight of the ready players, only filled in for policies that use weights
+     * Equal to the ready count otherwise
+     */
+    double getReadySleepingWeight();
+}
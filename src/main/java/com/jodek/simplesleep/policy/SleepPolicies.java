@@ -0,0 +1,95 @@
+package com.jodek.simplesleep.policy;
+
+import com.jodek.simplesleep.config.SleepRules;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the sleep policies that can be picked with "mode" in the config
+ * Other plugins should register their policies in setup(), so they are known when the config is loaded
+ */
+public final class SleepPolicies {
+
+    public static final String PERCENTAGE = "percentage";
+    public static final String AMOUNT = "amount";
+    public static final String WEIGHTED = "weighted";
+    public static final String MINIMUM = "minimum";
+    public static final String ALL_BUT = "all_but";
+
+    private static final Set<String> BUILT_IN = Set.of(PERCENTAGE, AMOUNT, WEIGHTED, MINIMUM, ALL_BUT);
+
+    // Keyed by lower case name
+    private static final Map<String, SleepPolicyFactory> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        FACTORIES.put(PERCENTAGE, rules -> new PercentagePolicy(rules.getPercentageRequired()));
+        FACTORIES.put(AMOUNT, rules -> new AmountPolicy(rules.getAmountRequired()));
+        FACTORIES.put(WEIGHTED, rules -> new WeightedPolicy(rules.getPercentageRequired(), rules.getWeights()));
+        FACTORIES.put(MINIMUM, rules -> new MinimumPolicy(rules.getPercentageRequired(), rules.getAmountRequired()));
+        FACTORIES.put(ALL_BUT, rules -> new AllButPolicy(rules.getAllButCount()));
+    }
+
+    private SleepPolicies() {
+    }
+
+    /**
+     * Registers a custom policy
+     * Worlds using it pick it up on the next config (re)load
+     *
+     * @param name    Name used as "mode" in the config, case insensitive
+     * @param factory Creates the policy from the resolved rules
+     * @throws IllegalArgumentException If the name is taken
+     */
+    public static void register(String name, SleepPolicyFactory factory) {
+        String key = normalize(name);
+        if (key == null || factory == null) {
+            throw new IllegalArgumentException("Policy name and factory are required");
+        }
+        if (FACTORIES.putIfAbsent(key, factory) != null) {
+            throw new IllegalArgumentException("Sleep policy '" + key + "' is already registered");
+        }
+    }
+
+    /**
+     * Removes a custom policy, built-in policies cannot be removed
+     * Worlds using it fall back to "percentage" on the next config (re)load
+     *
+     * @return True if the policy was registered
+     */
+    public static boolean unregister(String name) {
+        String key = normalize(name);
+        if (key == null || BUILT_IN.contains(key)) {
+            return false;
+        }
+        return FACTORIES.remove(key) != null;
+    }
+
+    public static boolean isRegistered(String name) {
+        String key = normalize(name);
+        return key != null && FACTORIES.containsKey(key);
+    }
+
+    /**
+     * Creates the policy of a set of rules
+     * Unknown names fall back to "percentage"
+     */
+    public static SleepPolicy create(String name, SleepRules rules) {
+        String key = normalize(name);
+        SleepPolicyFactory factory = key != null ? FACTORIES.get(key) : null;
+        SleepPolicy policy = factory != null ? factory.create(rules) : null;
+        return policy != null ? policy : FACTORIES.get(PERCENTAGE).create(rules);
+    }
+
+    /**
+     * Lower case form of a mode name, null if there is none
+     */
+    public static String normalize(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,51 @@
+package com.jodek.simplesleep.policy;
+
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+/**
+ * Decides how many sleeping players are needed to skip the night
+ * Called on the world thread for every check, so implementations must be cheap,
+ * thread safe and must not allocate
+ *
+ * Custom policies are added with SleepPolicies.register and picked with "mode" in the config
+ */
+public interface SleepPolicy {
+
+    /**
+     * Number of sleepers needed, shown to the players as "sleeping/required"
+     *
+     * @param counts Counts of the world or linked group
+     * @return Number of players required to sleep
+     */
+    int getRequiredSleepingPlayers(SleepCounts counts);
+
+    /**
+     * Whether the night should be skipped
+     *
+     * @param counts   Counts of the world or linked group
+     * @param required Value returned by getRequiredSleepingPlayers for the same counts
+     */
+    default boolean isThresholdMet(SleepCounts counts, int required) {
+        return counts.getReadySleepingPlayers() >= required;
+    }
+
+    /**
+     * Whether getWeight has to be called for the ready sleepers
+     * Weights are skipped entirely for policies that do not use them
+     */
+    default boolean usesWeights() {
+        return false;
+    }
+
+    /**
+     * How much a ready sleeper counts towards getReadySleepingWeight
+     */
+    default double getWeight(PlayerRef player) {
+        return 1.0;
+    }
+
+    /**
+     * Short description for log output, e.g. "3 players" or "50.0%"
+     */
+    String describe();
+}
@@ -0,0 +1,13 @@
+package com.jodek.simplesleep.policy;
+
+import com.jodek.simplesleep.config.SleepRules;
+
+/**
+ * Creates a SleepPolicy from the resolved rules of a world or group
+ * Called once per config (re)load for every distinct set of rules
+ */
+@FunctionalInterface
+public interface SleepPolicyFactory {
+
+    SleepPolicy create(SleepRules rules);
+}
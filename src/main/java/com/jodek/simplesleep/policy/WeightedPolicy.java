@@ -0,0 +1,79 @@
+package com.jodek.simplesleep.policy;
+
+import com.hypixel.hytale.server.core.permissions.PermissionsModule;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+import java.util.Map;
+
+/**
+ * Share of the players in the world, where sleepers with a weight permission count more
+ * A rank gets its weight through a permission its group grants
+ * A sleeper with several weight permissions uses the highest one
+ */
+public final class WeightedPolicy implements SleepPolicy {
+
+    private final double percentageRequired;
+
+    // Permission nodes and their weights, highest weight first
+    private final String[] permissions;
+    private final double[] weights;
+
+    public WeightedPolicy(double percentageRequired, Map<String, Double> weights) {
+        this.percentageRequired = percentageRequired;
+
+        Map.Entry<String, Double>[] entries = sortedByWeight(weights);
+        this.permissions = new String[entries.length];
+        this.weights = new double[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            this.permissions[i] = entries[i].getKey();
+            this.weights[i] = entries[i].getValue();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<String, Double>[] sortedByWeight(Map<String, Double> weights) {
+        if (weights == null) {
+            return new Map.Entry[0];
+        }
+        return weights.entrySet().stream()
+            .filter(entry -> entry.getKey() != null && entry.getValue() != null)
+            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+            .toArray(Map.Entry[]::new);
+    }
+
+    @Override
+    public int getRequiredSleepingPlayers(SleepCounts counts) {
+        return (int) Math.ceil(counts.getTotalPlayers() * percentageRequired);
+    }
+
+    @Override
+    public boolean isThresholdMet(SleepCounts counts, int required) {
+        return counts.getReadySleepingWeight() >= required;
+    }
+
+    @Override
+    public boolean usesWeights() {
+        return permissions.length > 0;
+    }
+
+    @Override
+    public double getWeight(PlayerRef player) {
+        PermissionsModule permissionsModule = PermissionsModule.get();
+        if (permissionsModule == null) {
+            return 1.0;
+        }
+
+        // Sorted by weight, so the first match is the highest
+        for (int i = 0; i < permissions.length; i++) {
+            if (permissionsModule.hasPermission(player.getUuid(), permissions[i])) {
+                return weights[i];
+            }
+        }
+        return 1.0;
+    }
+
+    @Override
+    public String describe() {
+        return (percentageRequired * 100) + "% weighted (" + permissions.length + " weights)";
+    }
+}
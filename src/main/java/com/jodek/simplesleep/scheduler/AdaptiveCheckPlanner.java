@@ -0,0 +1,121 @@
+package com.jodek.simplesleep.scheduler;
+
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.asset.type.gameplay.SleepConfig;
+import com.hypixel.hytale.server.core.modules.time.WorldTimeResource;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.events.SleepSnapshot;
+import com.jodek.simplesleep.policy.SleepCounts;
+import com.jodek.simplesleep.state.WorldSleepState;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Works out when a world has to be checked next
+ * Checks are rare during the day, get closer as the sleep hours approach
+ * and are fastest while someone is NoddingOff
+ */
+public final class AdaptiveCheckPlanner {
+
+    // Someone is NoddingOff, they can become ready any moment
+    public static final long NODDING_OFF_DELAY_MILLIS = 250L;
+
+    // Sleep is possible, same rate the plugin always used
+    public static final long NIGHT_DELAY_MILLIS = 1000L;
+
+    // No players in the world
+    public static final long IDLE_DELAY_MILLIS = 2000L;
+
+    // Upper bound so /time changes are picked up quickly enough
+    public static final long MAX_DAY_DELAY_MILLIS = 30_000L;
+
+    // Checks on an overloaded world are stretched by at most this factor
+    public static final long MAX_LOAD_BACKOFF = 10L;
+
+    private AdaptiveCheckPlanner() {
+    }
+
+    /**
+     * Calculates the delay until the next check of the world
+     *
+     * @param snapshot Result of the last check, null if the world was not counted
+     */
+    public static long planDelay(World world, Store<EntityStore> store, WorldSleepState state,
+                                 SleepSnapshot snapshot, long nowMillis) {
+        if (snapshot != null) {
+            if (snapshot.getDisplaySleepingPlayers() > 0) {
+                return planSleepingDelay(snapshot);
+            }
+        } else if (world.getPlayerRefs().isEmpty()) {
+            return IDLE_DELAY_MILLIS;
+        }
+
+        WorldTimeResource timeResource = store.getResource(WorldTimeResource.getResourceType());
+        Instant gameTime = timeResource.getGameTime();
+        double gameMillisPerRealMilli = state.observeGameTime(nowMillis, gameTime.toEpochMilli());
+
+        SleepConfig sleepConfig = world.getGameplayConfig().getWorldConfig().getSleepConfig();
+        double[] sleepHours = sleepConfig.getAllowedSleepHoursRange();
+        if (sleepHours == null || sleepHours.length < 2 || gameMillisPerRealMilli <= 0.0) {
+            // Unknown sleep hours or game speed, keep the default rate
+            return NIGHT_DELAY_MILLIS;
+        }
+
+        double hour = toHourOfDay(gameTime);
+        double gameHoursUntilSleep = hoursUntil(hour, sleepHours[0], sleepHours[1]);
+        if (gameHoursUntilSleep <= 0.0) {
+            return NIGHT_DELAY_MILLIS;
+        }
+
+        // Wait half of the remaining time, so checks get closer as night approaches
+        double realMillisUntilSleep = gameHoursUntilSleep * 3_600_000.0 / gameMillisPerRealMilli;
+        long delay = (long) (realMillisUntilSleep / 2.0);
+        return Math.max(NIGHT_DELAY_MILLIS, Math.min(MAX_DAY_DELAY_MILLIS, delay));
+    }
+
+    /**
+     * Delay while players are in bed, fast while someone is NoddingOff and can become ready any moment
+     */
+    public static long planSleepingDelay(SleepCounts counts) {
+        return counts.getDisplaySleepingPlayers() > counts.getReadySleepingPlayers()
+            ? NODDING_OFF_DELAY_MILLIS
+            : NIGHT_DELAY_MILLIS;
+    }
+
+    /**
+     * Stretches the delay while the world thread is slow to run queued checks
+     * Returns the delay unchanged once the average lag is back under the threshold
+     */
+    public static long applyLoadBackoff(long delayMillis, WorldSleepState state, int lagThresholdMillis) {
+        long thresholdMicros = lagThresholdMillis * 1000L;
+        long averageLagMicros = state.getAverageCheckLagMicros();
+        if (averageLagMicros <= thresholdMicros) {
+            return delayMillis;
+        }
+
+        long factor = Math.min(MAX_LOAD_BACKOFF, averageLagMicros / thresholdMicros + 1L);
+        return delayMillis * factor;
+    }
+
+    private static double toHourOfDay(Instant gameTime) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(gameTime, ZoneOffset.UTC);
+        return dateTime.getHour() + dateTime.getMinute() / 60.0 + dateTime.getSecond() / 3600.0;
+    }
+
+    /**
+     * Game hours until the sleep range starts, 0 if it already started
+     * The range can wrap around midnight (e.g. 19.5 to 5.5)
+     */
+    private static double hoursUntil(double hour, double start, double end) {
+        boolean inRange = start <= end
+            ? hour >= start && hour < end
+            : hour >= start || hour < end;
+        if (inRange) {
+            return 0.0;
+        }
+        return (start - hour + 24.0) % 24.0;
+    }
+}
@@ -0,0 +1,130 @@
+package com.jodek.simplesleep.scheduler;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread of the sleep checks, only running while players are online
+ * The thread is created when the first player joins (or a task is scheduled) and parked when
+ * the last one leaves, so an empty server has no SimpleSleep thread and no tick
+ * A delayed task scheduled while parked starts a thread that ends again once nothing is queued
+ */
+public class SleepScheduler {
+
+    // How long the thread waits for new work once nothing is queued
+    private static final long IDLE_KEEP_ALIVE_MILLIS = 1000L;
+
+    private final Runnable tick;
+    private final long tickPeriodMillis;
+
+    // Both null while parked, guarded by this
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> tickTask;
+
+    private boolean shutDown;
+
+    /**
+     * @param tick             Runs every tickPeriodMillis while players are online
+     * @param tickPeriodMillis Time between two ticks
+     */
+    public SleepScheduler(Runnable tick, long tickPeriodMillis) {
+        this.tick = tick;
+        this.tickPeriodMillis = tickPeriodMillis;
+    }
+
+    /**
+     * Starts the thread and the tick, called when a player joins
+     * Does nothing if they are already running
+     */
+    public synchronized void wake() {
+        ScheduledExecutorService current = ensureExecutor();
+        if (current != null && tickTask == null) {
+            tickTask = current.scheduleAtFixedRate(tick, tickPeriodMillis, tickPeriodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the tick and lets the thread end, called when the last player leaves
+     * Pending delayed and repeating tasks are dropped, nothing is left to check without players
+     * and a parked executor is out of reach of shutdown()
+     */
+    public synchronized void park() {
+        if (executor == null) {
+            return;
+        }
+        tickTask = null;
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.shutdown();
+        executor = null;
+    }
+
+    /**
+     * Runs a task once after a delay, starting the thread if it is parked
+     * A thread started this way ends shortly after the task ran, unless the scheduler was woken
+     *
+     * @return The scheduled task, null after shutdown
+     */
+    public synchronized ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        ScheduledExecutorService current = ensureExecutor();
+        return current != null ? current.schedule(task, delay, unit) : null;
+    }
+
+    /**
+     * Runs a task repeatedly until it is cancelled or the scheduler parks
+     *
+     * @return The scheduled task, null after shutdown
+     */
+    public synchronized ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period,
+                                                               TimeUnit unit) {
+        ScheduledExecutorService current = ensureExecutor();
+        return current != null ? current.scheduleAtFixedRate(task, initialDelay, period, unit) : null;
+    }
+
+    private ScheduledExecutorService ensureExecutor() {
+        if (shutDown) {
+            return null;
+        }
+        if (executor == null) {
+            // Daemon thread, so the scheduler never keeps the server process alive
+            executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "SimpleSleep-Scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            // Without a repeating task queued the thread doesn't outlive its last task
+            executor.setKeepAliveTime(IDLE_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the scheduler for good, delayed tasks are dropped
+     * Waits up to the timeout for a running task to finish, then interrupts it
+     *
+     * @return True if the thread ended within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        ScheduledThreadPoolExecutor current;
+        synchronized (this) {
+            shutDown = true;
+            current = executor;
+            executor = null;
+            tickTask = null;
+        }
+        if (current == null) {
+            return true;
+        }
+
+        current.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        current.shutdown();
+        if (current.awaitTermination(timeout, unit)) {
+            return true;
+        }
+        current.shutdownNow();
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+package com.jodek.simplesleep.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Combined sleep counts of a linked world group
+ * Every member world publishes the change of its own counts, so the totals are kept up to date
+ * without scanning the other worlds. Counts are packed into one long so all three
+ * are always read and updated together, without locks.
+ */
+public class LinkedGroupVote {
+
+    // 21 bits per count, up to 2 million players per group
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1L;
+
+    // Time a skip blocks the next one, the members need a moment to wake everyone up
+    private static final long SKIP_COOLDOWN_MILLIS = 5000L;
+
+    private final AtomicLong counts = new AtomicLong();
+    private final AtomicLong lastSkipMillis = new AtomicLong();
+
+    public static long pack(int display, int ready, int total) {
+        return (display & MASK) | ((ready & MASK) << BITS) | ((total & MASK) << (BITS * 2));
+    }
+
+    public static int display(long packed) {
+        return (int) (packed & MASK);
+    }
+
+    public static int ready(long packed) {
+        return (int) ((packed >>> BITS) & MASK);
+    }
+
+    public static int total(long packed) {
+        return (int) ((packed >>> (BITS * 2)) & MASK);
+    }
+
+    /**
+     * Replaces a member's previous counts with its new ones
+     *
+     * @return Packed counts of the whole group after the change
+     */
+    long replace(long previous, long current) {
+        return counts.addAndGet(current - previous);
+    }
+
+    public long getCounts() {
+        return counts.get();
+    }
+
+    /**
+     * Claims the night skip for the group
+     *
+     * @return false if another member already skipped the night a moment ago
+     */
+    public boolean tryStartSkip(long nowMillis) {
+        long last = lastSkipMillis.get();
+        return nowMillis - last >= SKIP_COOLDOWN_MILLIS && lastSkipMillis.compareAndSet(last, nowMillis);
+    }
+}
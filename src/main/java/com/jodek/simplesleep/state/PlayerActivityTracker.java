@@ -0,0 +1,156 @@
+package com.jodek.simplesleep.state;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Last activity time of every online player, used to leave idle players out of the required count
+ * Every player gets a slot in flat primitive arrays, so a lookup is one map get and one array read
+ *
+ * Interactions are recorded from any thread, movement is sampled by the sleep checks
+ * from the player's position, so no per-tick movement event is needed
+ */
+public final class PlayerActivityTracker {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Smaller position changes are physics jitter, not the player moving (squared blocks)
+    private static final double MIN_MOVE_SQUARED = 0.01;
+
+    // Slot of every tracked player, never changes while the player is tracked
+    private final Map<UUID, Integer> slots = new ConcurrentHashMap<>();
+
+    // Guards slot allocation and growing the table
+    private final Object lock = new Object();
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    // Replaced as a whole when it grows, readers use the instance they read once
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    private static final class Table {
+
+        final AtomicLongArray lastActiveMillis;
+
+        // Last sampled position, NaN until the first sample
+        // Only written by the checks of the world the player is in
+        final double[] x;
+        final double[] y;
+        final double[] z;
+
+        Table(int capacity) {
+            this.lastActiveMillis = new AtomicLongArray(capacity);
+            this.x = new double[capacity];
+            this.y = new double[capacity];
+            this.z = new double[capacity];
+        }
+
+        int capacity() {
+            return x.length;
+        }
+    }
+
+    /**
+     * Records an interaction, e.g. a click or a chat message
+     * Players that are not tracked yet are ignored, they count as active when first seen
+     */
+    public void markActive(UUID uuid, long nowMillis) {
+        Integer slot = slots.get(uuid);
+        if (slot == null) {
+            return;
+        }
+
+        Table current = table;
+        if (slot < current.capacity()) {
+            current.lastActiveMillis.set(slot, nowMillis);
+        }
+    }
+
+    /**
+     * Compares the player's position with the last sample and records movement as activity
+     * A player seen for the first time counts as active
+     *
+     * @return System time of the player's last activity
+     */
+    public long sampleMovement(UUID uuid, double x, double y, double z, long nowMillis) {
+        Integer slot = slots.get(uuid);
+        if (slot == null) {
+            slot = track(uuid, nowMillis);
+        }
+
+        Table current = table;
+        if (slot >= current.capacity()) {
+            // Grown after we read it, the next check sees the new table
+            return nowMillis;
+        }
+
+        double dx = x - current.x[slot];
+        double dy = y - current.y[slot];
+        double dz = z - current.z[slot];
+        // NaN for the first sample, so it never counts as standing still
+        if (!(dx * dx + dy * dy + dz * dz < MIN_MOVE_SQUARED)) {
+            current.x[slot] = x;
+            current.y[slot] = y;
+            current.z[slot] = z;
+            current.lastActiveMillis.set(slot, nowMillis);
+            return nowMillis;
+        }
+        return current.lastActiveMillis.get(slot);
+    }
+
+    // Gives a new player a slot, allocates only when the player is first seen
+    private int track(UUID uuid, long nowMillis) {
+        synchronized (lock) {
+            Integer existing = slots.get(uuid);
+            if (existing != null) {
+                return existing;
+            }
+
+            int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+            Table current = table;
+            if (slot >= current.capacity()) {
+                current = grow(current, Math.max(slot + 1, current.capacity() * 2));
+            }
+            current.x[slot] = Double.NaN;
+            current.y[slot] = Double.NaN;
+            current.z[slot] = Double.NaN;
+            current.lastActiveMillis.set(slot, nowMillis);
+
+            slots.put(uuid, slot);
+            return slot;
+        }
+    }
+
+    private Table grow(Table current, int capacity) {
+        Table grown = new Table(capacity);
+        for (int i = 0; i < current.capacity(); i++) {
+            grown.lastActiveMillis.set(i, current.lastActiveMillis.get(i));
+            grown.x[i] = current.x[i];
+            grown.y[i] = current.y[i];
+            grown.z[i] = current.z[i];
+        }
+        table = grown;
+        return grown;
+    }
+
+    /**
+     * Frees the player's slot, called when the player disconnects
+     */
+    public void untrack(UUID uuid) {
+        synchronized (lock) {
+            Integer slot = slots.remove(uuid);
+            if (slot == null) {
+                return;
+            }
+            if (freeCount == freeSlots.length) {
+                int[] grown = new int[freeSlots.length * 2];
+                System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+                freeSlots = grown;
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+}
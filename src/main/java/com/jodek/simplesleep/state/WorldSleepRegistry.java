@@ -0,0 +1,96 @@
+package com.jodek.simplesleep.state;
+
+import com.hypixel.hytale.server.core.universe.world.World;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the sleep state of every loaded world
+ * States are keyed by the world instance, created when a world loads and dropped when it unloads
+ */
+public class WorldSleepRegistry {
+
+    /**
+     * Notified when a world state is created or dropped
+     */
+    public interface Listener {
+
+        void onWorldAdded(WorldSleepState state);
+
+        void onWorldRemoved(WorldSleepState state);
+    }
+
+    private final Map<World, WorldSleepState> states = new ConcurrentHashMap<>();
+
+    private volatile Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Called when a world is added to the universe
+     */
+    public void register(World world) {
+        get(world);
+    }
+
+    /**
+     * Called when a world is removed from the universe
+     */
+    public void unregister(World world) {
+        WorldSleepState state = states.remove(world);
+        if (state != null) {
+            state.withdrawVote();
+            state.stopAcceleration();
+        }
+        Listener current = listener;
+        if (state != null && current != null) {
+            current.onWorldRemoved(state);
+        }
+    }
+
+    /**
+     * Gets the state of a world, creating it for worlds that were loaded before the plugin started
+     * Only for worlds that are known to be loaded, delayed tasks use find() instead
+     */
+    public WorldSleepState get(World world) {
+        WorldSleepState state = states.get(world);
+        if (state != null) {
+            return state;
+        }
+
+        WorldSleepState created = new WorldSleepState(world.getName());
+        state = states.putIfAbsent(world, created);
+        if (state != null) {
+            return state;
+        }
+
+        // Outside of the map update, the listener registers an MBean
+        Listener current = listener;
+        if (current != null) {
+            current.onWorldAdded(created);
+            if (states.get(world) != created) {
+                // Unregistered meanwhile, it may have missed the state
+                current.onWorldRemoved(created);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Gets the state of a world without creating it
+     *
+     * @return The state, null if the world was removed
+     */
+    public WorldSleepState find(World world) {
+        return states.get(world);
+    }
+
+    public Collection<WorldSleepState> getAll() {
+        return Collections.unmodifiableCollection(states.values());
+    }
+}
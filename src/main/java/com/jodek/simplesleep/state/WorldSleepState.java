@@ -0,0 +1,340 @@
+package com.jodek.simplesleep.state;
+
+import com.jodek.simplesleep.metrics.WorldSleepMetrics;
+import com.jodek.simplesleep.policy.MutableSleepCounts;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sleep state kept for one loaded world
+ * Written from the world's own thread, safe to read from any thread
+ */
+public class WorldSleepState {
+
+    private final String worldName;
+
+    private final WorldSleepMetrics metrics = new WorldSleepMetrics();
+
+    // Last sleeping player count shown to the world, -1 if nothing was shown yet
+    private final AtomicInteger lastSleepingCount = new AtomicInteger(-1);
+
+    // Last sleeping count and threshold state sent to the sleep listeners, only used on the world thread
+    private int lastReportedSleepingCount;
+    private boolean thresholdReported;
+
+    // System time the sleeping count was last shown, and whether a delayed update is scheduled
+    private volatile long lastMessageMillis;
+    private final AtomicBoolean messageFlushScheduled = new AtomicBoolean();
+
+    // True while a check is queued on the world thread and has not started yet
+    private final AtomicBoolean checkPending = new AtomicBoolean();
+
+    // Queue delay of checks on the world thread, in microseconds
+    private volatile long checkQueuedAtNanos;
+    private volatile long lastCheckLagMicros;
+    private volatile long averageCheckLagMicros;
+    private volatile long maxCheckLagMicros;
+
+    // System time when the world should be checked next
+    private volatile long nextCheckMillis;
+
+    // Counts this world last added to its linked group's vote, guarded by this state
+    private LinkedGroupVote publishedVote;
+    private long publishedCounts;
+
+    // Set when the world is removed, its counts are never published again
+    private boolean voteWithdrawn;
+
+    // Reused for the group's counts on every check, only touched on the world thread
+    private final MutableSleepCounts groupCounts = new MutableSleepCounts();
+
+    // System time a check first saw the threshold met (by the whole group for a linked world), 0 if not met
+    private long thresholdMetMillis;
+
+    // Share of the night speed-up currently applied, 0 when time runs normally
+    private volatile double accelerationFraction;
+
+    // Repeating task stepping the game time forward, null when not accelerating
+    private volatile ScheduledFuture<?> accelerationTask;
+
+    // System time of the last game time step, only used on the world thread
+    private long lastAccelerationStepMillis;
+
+    // Last observed game time, used to measure how fast game time passes
+    private long lastObservedRealMillis;
+    private long lastObservedGameMillis;
+    private double gameMillisPerRealMilli;
+
+    public WorldSleepState(String worldName) {
+        this.worldName = worldName;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public WorldSleepMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getLastSleepingCount() {
+        return lastSleepingCount.get();
+    }
+
+    public void setLastSleepingCount(int sleepingCount) {
+        lastSleepingCount.set(sleepingCount);
+    }
+
+    public long getLastMessageMillis() {
+        return lastMessageMillis;
+    }
+
+    public void markMessageSent(long timeMillis) {
+        this.lastMessageMillis = timeMillis;
+    }
+
+    /**
+     * Marks a delayed message update as scheduled
+     *
+     * @return false if one is already scheduled for the current debounce window
+     */
+    public boolean tryScheduleMessageFlush() {
+        return messageFlushScheduled.compareAndSet(false, true);
+    }
+
+    public void clearMessageFlush() {
+        messageFlushScheduled.set(false);
+    }
+
+    /**
+     * Marks a check as queued
+     *
+     * @return false if a check is already queued and the new one should be dropped
+     */
+    public boolean tryMarkCheckPending() {
+        return checkPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Called when the queued check starts running (or could not be queued)
+     */
+    public void clearCheckPending() {
+        checkPending.set(false);
+    }
+
+    public boolean isCheckPending() {
+        return checkPending.get();
+    }
+
+    /**
+     * Marks a check as queued and remembers when, so its queue delay can be measured
+     *
+     * @return false if a check is already queued and the new one should be dropped
+     */
+    public boolean tryQueueCheck(long nanoTime) {
+        if (!tryMarkCheckPending()) {
+            return false;
+        }
+        markCheckQueued(nanoTime);
+        return true;
+    }
+
+    /**
+     * Called on the world thread when the queued check starts, changes from now on need a new check
+     */
+    public void startQueuedCheck(long nanoTime) {
+        clearCheckPending();
+        recordCheckStarted(nanoTime);
+    }
+
+    public void markCheckQueued(long nanoTime) {
+        this.checkQueuedAtNanos = nanoTime;
+    }
+
+    /**
+     * Records how long the queued check waited for the world thread
+     * Only called from the world's own thread
+     */
+    public void recordCheckStarted(long nanoTime) {
+        long lagMicros = Math.max(0L, (nanoTime - checkQueuedAtNanos) / 1000L);
+        lastCheckLagMicros = lagMicros;
+        // Moving average over roughly the last 8 checks
+        averageCheckLagMicros += (lagMicros - averageCheckLagMicros) / 8L;
+        if (lagMicros > maxCheckLagMicros) {
+            maxCheckLagMicros = lagMicros;
+        }
+    }
+
+    public long getLastCheckLagMicros() {
+        return lastCheckLagMicros;
+    }
+
+    public long getAverageCheckLagMicros() {
+        return averageCheckLagMicros;
+    }
+
+    public long getMaxCheckLagMicros() {
+        return maxCheckLagMicros;
+    }
+
+    /**
+     * Publishes this world's counts to its linked group
+     * Moving to another group (config reload) starts over in the new one
+     *
+     * @return Packed counts of the whole group
+     */
+    public synchronized long publishVote(LinkedGroupVote vote, long counts) {
+        if (voteWithdrawn) {
+            // Removed while this check was running, stay out of the group
+            return vote.getCounts();
+        }
+        if (publishedVote != vote) {
+            clearVote();
+            publishedVote = vote;
+        }
+        long groupCounts = vote.replace(publishedCounts, counts);
+        publishedCounts = counts;
+        return groupCounts;
+    }
+
+    public synchronized long getPublishedCounts() {
+        return publishedCounts;
+    }
+
+    /**
+     * Reusable holder for the linked group's counts, only use it on the world thread
+     */
+    public MutableSleepCounts getGroupCounts() {
+        return groupCounts;
+    }
+
+    /**
+     * Removes this world's counts from its linked group for good, called when the world unloads
+     * Safe from any thread, a check still running on the world can't publish them again
+     */
+    public synchronized void withdrawVote() {
+        voteWithdrawn = true;
+        clearVote();
+    }
+
+    private void clearVote() {
+        if (publishedVote != null) {
+            publishedVote.replace(publishedCounts, 0L);
+            publishedVote = null;
+            publishedCounts = 0L;
+        }
+    }
+
+    public long getNextCheckMillis() {
+        return nextCheckMillis;
+    }
+
+    public void setNextCheckMillis(long nextCheckMillis) {
+        this.nextCheckMillis = nextCheckMillis;
+    }
+
+    public boolean isCheckDue(long nowMillis) {
+        return nowMillis >= nextCheckMillis;
+    }
+
+    /**
+     * Records the current game time and returns how many game milliseconds pass per real millisecond
+     * Jumps (night skip, /time) are ignored and the last known speed is kept
+     * Only called from the world's own thread
+     *
+     * @return Game speed, 0 if not known yet
+     */
+    public double observeGameTime(long realMillis, long gameMillis) {
+        long realDelta = realMillis - lastObservedRealMillis;
+        long gameDelta = gameMillis - lastObservedGameMillis;
+
+        if (lastObservedRealMillis != 0L && realDelta > 0L && gameDelta > 0L) {
+            double speed = (double) gameDelta / realDelta;
+            // A day shorter than a minute is a time jump, not the normal speed
+            if (speed < 1440.0) {
+                gameMillisPerRealMilli = speed;
+            }
+        }
+
+        lastObservedRealMillis = realMillis;
+        lastObservedGameMillis = gameMillis;
+        return gameMillisPerRealMilli;
+    }
+
+    public double getAccelerationFraction() {
+        return accelerationFraction;
+    }
+
+    public void setAccelerationFraction(double accelerationFraction) {
+        this.accelerationFraction = accelerationFraction;
+    }
+
+    /**
+     * Whether the step task is running, it ends on its own when the scheduler parks
+     */
+    public boolean isAccelerating() {
+        ScheduledFuture<?> task = accelerationTask;
+        return task != null && !task.isDone();
+    }
+
+    /**
+     * Starts stepping the game time forward
+     * Only called from the world's own thread
+     *
+     * @param task Repeating step task, cancelled again if the world is already accelerating
+     */
+    public void startAcceleration(ScheduledFuture<?> task, long nowMillis) {
+        if (isAccelerating()) {
+            task.cancel(false);
+            return;
+        }
+        lastAccelerationStepMillis = nowMillis;
+        accelerationTask = task;
+    }
+
+    /**
+     * Stops the game time steps, safe to call from any thread
+     */
+    public void stopAcceleration() {
+        accelerationFraction = 0.0;
+        ScheduledFuture<?> task = accelerationTask;
+        accelerationTask = null;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    public long getLastAccelerationStepMillis() {
+        return lastAccelerationStepMillis;
+    }
+
+    public void setLastAccelerationStepMillis(long lastAccelerationStepMillis) {
+        this.lastAccelerationStepMillis = lastAccelerationStepMillis;
+    }
+
+    public int getLastReportedSleepingCount() {
+        return lastReportedSleepingCount;
+    }
+
+    public void setLastReportedSleepingCount(int lastReportedSleepingCount) {
+        this.lastReportedSleepingCount = lastReportedSleepingCount;
+    }
+
+    public long getThresholdMetMillis() {
+        return thresholdMetMillis;
+    }
+
+    public void setThresholdMetMillis(long thresholdMetMillis) {
+        this.thresholdMetMillis = thresholdMetMillis;
+    }
+
+    public boolean isThresholdReported() {
+        return thresholdReported;
+    }
+
+    public void setThresholdReported(boolean thresholdReported) {
+        this.thresholdReported = thresholdReported;
+    }
+}
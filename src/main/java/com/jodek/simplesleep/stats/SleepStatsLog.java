@@ -0,0 +1,130 @@
+package com.jodek.simplesleep.stats;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of fixed-size binary records in a memory-mapped file
+ * Appending is a few buffer writes, the OS writes the pages back in the background
+ * Only used from the stats thread
+ *
+ * Layout: header (magic, version, generation, record count), then records of RECORD_BYTES:
+ * type (1), padding (3), world id (4), time (8), value (8), player UUID (16)
+ */
+final class SleepStatsLog {
+
+    static final int RECORD_BYTES = 40;
+
+    private static final int MAGIC = 0x53534C47;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+
+    /**
+     * Receives the records of the log in the order they were appended
+     */
+    interface RecordConsumer {
+
+        void accept(byte type, int worldId, long timeMillis, long value, long uuidMost, long uuidLeast);
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private long generation;
+    private int count;
+
+    private SleepStatsLog(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens the log, creating or resetting it if the file is missing or not a log
+     *
+     * @param capacity Number of records that fit before the log has to be compacted
+     */
+    static SleepStatsLog open(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        SleepStatsLog log = new SleepStatsLog(channel, buffer, capacity);
+        if (buffer.getInt(MAGIC_OFFSET) == MAGIC && buffer.getInt(VERSION_OFFSET) == VERSION) {
+            log.generation = buffer.getLong(GENERATION_OFFSET);
+            log.count = Math.max(0, Math.min(capacity, buffer.getInt(COUNT_OFFSET)));
+        } else {
+            log.reset(0L);
+        }
+        return log;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    /**
+     * Appends a record, the count in the header is only raised once the record is written
+     */
+    void append(byte type, int worldId, long timeMillis, long value, long uuidMost, long uuidLeast) {
+        int offset = HEADER_BYTES + count * RECORD_BYTES;
+        buffer.put(offset, type);
+        buffer.putInt(offset + 4, worldId);
+        buffer.putLong(offset + 8, timeMillis);
+        buffer.putLong(offset + 16, value);
+        buffer.putLong(offset + 24, uuidMost);
+        buffer.putLong(offset + 32, uuidLeast);
+        count++;
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    void forEach(RecordConsumer consumer) {
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_BYTES + i * RECORD_BYTES;
+            consumer.accept(buffer.get(offset), buffer.getInt(offset + 4), buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16), buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+        }
+    }
+
+    /**
+     * Empties the log and starts a new generation, called once its records are compacted
+     */
+    void reset(long generation) {
+        this.generation = generation;
+        this.count = 0;
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putLong(GENERATION_OFFSET, generation);
+        buffer.putInt(COUNT_OFFSET, 0);
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,348 @@
+package com.jodek.simplesleep.stats;
+
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.events.SleepListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Sleep history of every world, kept across restarts
+ * Fed by the sleep events, the world thread only queues a record and never touches the disk
+ *
+ * A background thread appends the records to a memory-mapped log (SimpleSleep-stats.log)
+ * and applies them to the in-memory rollups the stats command reads
+ * The log is compacted into per-world aggregates (SimpleSleep-stats.dat) periodically and when it is full
+ */
+public final class SleepStatsStore implements SleepListener {
+
+    static final byte NIGHT_SKIPPED = 1;
+    static final byte PLAYER_SLEPT = 2;
+
+    private static final int AGGREGATES_MAGIC = 0x53534147;
+    private static final int AGGREGATES_VERSION = 1;
+
+    private static final int LOG_CAPACITY = 4096;
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long COMPACT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10L);
+    private static final long POLL_MILLIS = 1000L;
+
+    private final Path logPath;
+    private final Path aggregatesPath;
+    private final HytaleLogger logger;
+
+    // Filled by the world threads, drained by the stats thread
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Time the first player of a world went to bed, cleared when nobody is in bed
+    private final Map<String, Long> bedSince = new ConcurrentHashMap<>();
+
+    // Rollups by world name, read by the stats command
+    private final Map<String, WorldSleepStats> worlds = new ConcurrentHashMap<>();
+
+    // Stats thread only: world names by id, the id is stored in the log records
+    private final List<String> worldNames = new ArrayList<>();
+    private final Map<String, Integer> worldIds = new HashMap<>();
+    private long generation;
+    private SleepStatsLog log;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    private record Pending(byte type, String worldName, long timeMillis, long value, UUID player) {
+    }
+
+    /**
+     * @param directory Directory of the log and the aggregates, usually config/
+     */
+    public SleepStatsStore(Path directory, HytaleLogger logger) {
+        this.logPath = directory.resolve("SimpleSleep-stats.log");
+        this.aggregatesPath = directory.resolve("SimpleSleep-stats.dat");
+        this.logger = logger;
+    }
+
+    /**
+     * Loads the aggregates, replays the log written since they were compacted and starts the stats thread
+     * A store that failed to open keeps working in memory only
+     */
+    public synchronized void open() {
+        if (running) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(logPath.getParent());
+            loadAggregates();
+            log = SleepStatsLog.open(logPath, LOG_CAPACITY);
+            if (log.getGeneration() >= generation) {
+                log.forEach(this::apply);
+            } else {
+                // An older log was compacted already, only the aggregates were written before the restart
+                // New records have to go into the current generation, or the next start skips them too
+                log.reset(generation);
+            }
+        } catch (IOException e) {
+            logger.at(Level.WARNING).withCause(e).log("Failed to open the sleep statistics, they are not saved: " + e.getMessage());
+            log = null;
+        }
+
+        running = true;
+        thread = new Thread(this::run, "SimpleSleep-Stats");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Writes the queued records, compacts the log and stops the stats thread
+     * Waits up to the timeout for the thread
+     */
+    public synchronized void close(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.join(unit.toMillis(timeout));
+        if (thread.isAlive()) {
+            logger.at(Level.WARNING).log("SimpleSleep statistics did not stop within " + unit.toMillis(timeout) + "ms");
+        }
+        thread = null;
+    }
+
+    @Override
+    public void onSleepCountChanged(World world, int sleepingPlayers, int requiredPlayers) {
+        if (sleepingPlayers > 0) {
+            bedSince.putIfAbsent(world.getName(), System.currentTimeMillis());
+        } else {
+            bedSince.remove(world.getName());
+        }
+    }
+
+    @Override
+    public void onNightSkipped(World world, Instant wakeUp) {
+        long now = System.currentTimeMillis();
+        Long since = bedSince.remove(world.getName());
+        enqueue(new Pending(NIGHT_SKIPPED, world.getName(), now, since != null ? now - since : -1L, null));
+    }
+
+    @Override
+    public void onWakeUp(World world, List<Ref<EntityStore>> players, Instant wakeUp) {
+        Store<EntityStore> store = world.getEntityStore().getStore();
+        long now = System.currentTimeMillis();
+        for (int i = 0, size = players.size(); i < size; i++) {
+            Ref<EntityStore> entityRef = players.get(i);
+            if (!entityRef.isValid()) {
+                continue;
+            }
+            PlayerRef playerRef = store.getComponent(entityRef, PlayerRef.getComponentType());
+            if (playerRef != null) {
+                enqueue(new Pending(PLAYER_SLEPT, world.getName(), now, 0L, playerRef.getUuid()));
+            }
+        }
+    }
+
+    // Never blocks, records are dropped when the stats thread can't keep up
+    private void enqueue(Pending pending) {
+        if (!running || !queue.offer(pending)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rollups of every world that skipped a night since the statistics were started
+     */
+    public Collection<WorldSleepStats> getWorlds() {
+        return Collections.unmodifiableCollection(worlds.values());
+    }
+
+    /**
+     * Records that were lost because the queue was full or the store was closed
+     */
+    public long getDroppedRecords() {
+        return dropped.get();
+    }
+
+    // Stats thread
+    private void run() {
+        long lastCompact = System.currentTimeMillis();
+        try {
+            while (running || !queue.isEmpty()) {
+                Pending pending = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (pending != null) {
+                    write(pending);
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastCompact >= COMPACT_INTERVAL_MILLIS) {
+                    compact(false);
+                    lastCompact = now;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.at(Level.WARNING).withCause(e).log("SimpleSleep statistics stopped: " + e);
+        } finally {
+            compact(false);
+            closeLog();
+        }
+    }
+
+    private void write(Pending pending) {
+        Integer worldId = worldIds.get(pending.worldName());
+        if (worldId == null) {
+            worldId = addWorld(pending.worldName());
+            // The name of a world id is only stored in the aggregates, so they are written before the log refers to it
+            compact(true);
+        }
+
+        long most = pending.player() != null ? pending.player().getMostSignificantBits() : 0L;
+        long least = pending.player() != null ? pending.player().getLeastSignificantBits() : 0L;
+        if (log != null) {
+            if (log.isFull()) {
+                compact(true);
+            }
+            log.append(pending.type(), worldId, pending.timeMillis(), pending.value(), most, least);
+        }
+        apply(pending.type(), worldId, pending.timeMillis(), pending.value(), most, least);
+    }
+
+    private int addWorld(String worldName) {
+        int worldId = worldNames.size();
+        worldNames.add(worldName);
+        worldIds.put(worldName, worldId);
+        worlds.computeIfAbsent(worldName, WorldSleepStats::new);
+        return worldId;
+    }
+
+    // Applies a record to the rollups, records of unknown worlds are ignored
+    private void apply(byte type, int worldId, long timeMillis, long value, long uuidMost, long uuidLeast) {
+        if (worldId < 0 || worldId >= worldNames.size()) {
+            return;
+        }
+        WorldSleepStats stats = worlds.computeIfAbsent(worldNames.get(worldId), WorldSleepStats::new);
+        if (type == NIGHT_SKIPPED) {
+            stats.recordNight(value);
+        } else if (type == PLAYER_SLEPT) {
+            stats.recordSleeper(new UUID(uuidMost, uuidLeast));
+        }
+    }
+
+    /**
+     * Writes the rollups as the new aggregates and empties the log
+     * The aggregates get the next generation before the log is reset, so after a crash in between
+     * the old log is recognized as already compacted and not replayed twice
+     *
+     * @param force Also write the aggregates if the log is empty
+     */
+    private void compact(boolean force) {
+        if (log == null || (!force && log.getCount() == 0)) {
+            return;
+        }
+
+        long next = Math.max(generation, log.getGeneration()) + 1L;
+        try {
+            writeAggregates(next);
+            generation = next;
+            log.reset(next);
+        } catch (IOException e) {
+            logger.at(Level.WARNING).withCause(e).log("Failed to compact the sleep statistics: " + e.getMessage());
+        }
+    }
+
+    private void writeAggregates(long generation) throws IOException {
+        Path temp = aggregatesPath.resolveSibling(aggregatesPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(AGGREGATES_MAGIC);
+            out.writeInt(AGGREGATES_VERSION);
+            out.writeLong(generation);
+            out.writeInt(worldNames.size());
+            for (String worldName : worldNames) {
+                WorldSleepStats stats = worlds.computeIfAbsent(worldName, WorldSleepStats::new);
+                out.writeUTF(worldName);
+                out.writeLong(stats.getNightsSkipped());
+                out.writeLong(stats.getWaitSamples());
+                out.writeLong(stats.getTotalWaitMillis());
+                out.writeLong(stats.getMaxWaitMillis());
+
+                Map<UUID, Long> nightsSlept = stats.getNightsSlept();
+                out.writeInt(nightsSlept.size());
+                for (Map.Entry<UUID, Long> entry : nightsSlept.entrySet()) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    out.writeLong(entry.getValue());
+                }
+            }
+        }
+
+        try {
+            Files.move(temp, aggregatesPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, aggregatesPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void loadAggregates() throws IOException {
+        if (!Files.exists(aggregatesPath)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(aggregatesPath)))) {
+            if (in.readInt() != AGGREGATES_MAGIC || in.readInt() != AGGREGATES_VERSION) {
+                logger.at(Level.WARNING).log("Unknown sleep statistics format in " + aggregatesPath + ", starting over");
+                return;
+            }
+            generation = in.readLong();
+            int worldCount = in.readInt();
+            for (int i = 0; i < worldCount; i++) {
+                String worldName = in.readUTF();
+                addWorld(worldName);
+                WorldSleepStats stats = worlds.get(worldName);
+                stats.restore(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+
+                int players = in.readInt();
+                for (int j = 0; j < players; j++) {
+                    stats.restoreSleeper(new UUID(in.readLong(), in.readLong()), in.readLong());
+                }
+            }
+        }
+    }
+
+    private void closeLog() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.at(Level.WARNING).log("Failed to close the sleep statistics log: " + e.getMessage());
+        }
+        log = null;
+    }
+}
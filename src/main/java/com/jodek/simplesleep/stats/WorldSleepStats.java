@@ -0,0 +1,105 @@
+package com.jodek.simplesleep.stats;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sleep history of one world, kept in memory and served to the stats command
+ * Only written by the stats thread, safe to read from any thread
+ */
+public final class WorldSleepStats {
+
+    private final String worldName;
+
+    private volatile long nightsSkipped;
+
+    // Time from the first player going to bed until the night ended
+    private volatile long waitSamples;
+    private volatile long totalWaitMillis;
+    private volatile long maxWaitMillis;
+
+    // Nights each player slept through
+    private final Map<UUID, Long> nightsSlept = new ConcurrentHashMap<>();
+
+    WorldSleepStats(String worldName) {
+        this.worldName = worldName;
+    }
+
+    /**
+     * @param waitMillis Time spent waiting for the threshold, negative if unknown
+     */
+    void recordNight(long waitMillis) {
+        nightsSkipped++;
+        if (waitMillis >= 0L) {
+            waitSamples++;
+            totalWaitMillis += waitMillis;
+            maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+        }
+    }
+
+    void recordSleeper(UUID player) {
+        nightsSlept.merge(player, 1L, Long::sum);
+    }
+
+    // Restores the values of a compacted file
+    void restore(long nightsSkipped, long waitSamples, long totalWaitMillis, long maxWaitMillis) {
+        this.nightsSkipped = nightsSkipped;
+        this.waitSamples = waitSamples;
+        this.totalWaitMillis = totalWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    void restoreSleeper(UUID player, long nights) {
+        nightsSlept.put(player, nights);
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public long getNightsSkipped() {
+        return nightsSkipped;
+    }
+
+    public long getWaitSamples() {
+        return waitSamples;
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    public long getAverageWaitMillis() {
+        long samples = waitSamples;
+        return samples > 0L ? totalWaitMillis / samples : 0L;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Number of different players that slept through at least one night
+     */
+    public int getParticipants() {
+        return nightsSlept.size();
+    }
+
+    public Map<UUID, Long> getNightsSlept() {
+        return nightsSlept;
+    }
+
+    /**
+     * Players that slept through the most nights, most first
+     */
+    public List<Map.Entry<UUID, Long>> getTopSleepers(int limit) {
+        return nightsSlept.entrySet().stream()
+            .sorted(Map.Entry.<UUID, Long>comparingByValue(Comparator.reverseOrder()))
+            .limit(limit)
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+            .toList();
+    }
+}
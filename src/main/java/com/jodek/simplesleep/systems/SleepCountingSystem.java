@@ -0,0 +1,49 @@
+package com.jodek.simplesleep.systems;
+
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSomnolence;
+import com.hypixel.hytale.component.ArchetypeChunk;
+import com.hypixel.hytale.component.CommandBuffer;
+import com.hypixel.hytale.component.ResourceType;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.query.Query;
+import com.hypixel.hytale.component.system.tick.EntityTickingSystem;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.events.SleepTally;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counts sleeping players as part of the world tick (ECS execution mode only)
+ * Walks the players in the store's own chunk layout, so no player list and no random access lookups
+ * Players without a PlayerSomnolence are not visited, the handler adds them to the total as awake
+ * Does nothing unless SleepEvaluationSystem started a count on the previous tick
+ */
+public class SleepCountingSystem extends EntityTickingSystem<EntityStore> {
+
+    private final ResourceType<EntityStore, SleepTallyResource> tallyType;
+    private final Query<EntityStore> query;
+
+    public SleepCountingSystem(ResourceType<EntityStore, SleepTallyResource> tallyType) {
+        this.tallyType = tallyType;
+        this.query = Query.and(PlayerSomnolence.getComponentType(), PlayerRef.getComponentType());
+    }
+
+    @Override
+    public Query<EntityStore> getQuery() {
+        return query;
+    }
+
+    @Override
+    public void tick(float dt, int index, @NotNull ArchetypeChunk<EntityStore> archetypeChunk,
+                     @NotNull Store<EntityStore> store, @NotNull CommandBuffer<EntityStore> commandBuffer) {
+        SleepTally tally = store.getResource(tallyType).getTally();
+        if (!tally.isCounting()) {
+            return;
+        }
+
+        tally.add(store,
+            archetypeChunk.getComponent(index, PlayerRef.getComponentType()),
+            archetypeChunk.getReferenceTo(index),
+            archetypeChunk.getComponent(index, PlayerSomnolence.getComponentType()));
+    }
+}
@@ -0,0 +1,47 @@
+package com.jodek.simplesleep.systems;
+
+import com.hypixel.hytale.component.ResourceType;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.dependency.Dependency;
+import com.hypixel.hytale.component.dependency.Order;
+import com.hypixel.hytale.component.dependency.SystemDependency;
+import com.hypixel.hytale.component.system.tick.TickingSystem;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.SimpleSleep;
+import com.jodek.simplesleep.events.SleepEventHandler;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+/**
+ * Runs once per world tick after SleepCountingSystem (ECS execution mode only)
+ * Hands a finished count to the sleep handler and starts the next one when the world is due
+ */
+public class SleepEvaluationSystem extends TickingSystem<EntityStore> {
+
+    private final SimpleSleep plugin;
+    private final ResourceType<EntityStore, SleepTallyResource> tallyType;
+    private final Set<Dependency<EntityStore>> dependencies =
+        Set.of(new SystemDependency<>(Order.AFTER, SleepCountingSystem.class));
+
+    public SleepEvaluationSystem(SimpleSleep plugin, ResourceType<EntityStore, SleepTallyResource> tallyType) {
+        this.plugin = plugin;
+        this.tallyType = tallyType;
+    }
+
+    @Override
+    public Set<Dependency<EntityStore>> getDependencies() {
+        return dependencies;
+    }
+
+    @Override
+    public void tick(float dt, int systemIndex, @NotNull Store<EntityStore> store) {
+        // Handler is created in start(), systems are registered before that
+        SleepEventHandler handler = plugin.getSleepEventHandler();
+        if (handler == null) {
+            return;
+        }
+
+        handler.onWorldTick(store, store.getResource(tallyType).getTally());
+    }
+}
@@ -0,0 +1,68 @@
+package com.jodek.simplesleep.systems;
+
+import com.hypixel.hytale.builtin.beds.sleep.components.PlayerSomnolence;
+import com.hypixel.hytale.component.CommandBuffer;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.query.Query;
+import com.hypixel.hytale.component.system.RefChangeSystem;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.SimpleSleep;
+import com.jodek.simplesleep.events.SleepEventHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Listens for PlayerSomnolence changes
+ * Lets the sleep handler re-check only the world where a player's sleep state changed
+ */
+public class SleepStateChangeSystem extends RefChangeSystem<EntityStore, PlayerSomnolence> {
+
+    private final SimpleSleep plugin;
+
+    public SleepStateChangeSystem(SimpleSleep plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public ComponentType<EntityStore, PlayerSomnolence> componentType() {
+        return PlayerSomnolence.getComponentType();
+    }
+
+    @Override
+    public Query<EntityStore> getQuery() {
+        return PlayerSomnolence.getComponentType();
+    }
+
+    @Override
+    public void onComponentAdded(@NotNull Ref<EntityStore> ref, @NotNull PlayerSomnolence component,
+                                 @NotNull Store<EntityStore> store, @NotNull CommandBuffer<EntityStore> commandBuffer) {
+        notifyHandler(store, component);
+    }
+
+    @Override
+    public void onComponentSet(@NotNull Ref<EntityStore> ref, @Nullable PlayerSomnolence oldComponent,
+                               @NotNull PlayerSomnolence newComponent, @NotNull Store<EntityStore> store,
+                               @NotNull CommandBuffer<EntityStore> commandBuffer) {
+        notifyHandler(store, newComponent);
+    }
+
+    @Override
+    public void onComponentRemoved(@NotNull Ref<EntityStore> ref, @NotNull PlayerSomnolence component,
+                                   @NotNull Store<EntityStore> store, @NotNull CommandBuffer<EntityStore> commandBuffer) {
+        notifyHandler(store, null);
+    }
+
+    private void notifyHandler(Store<EntityStore> store, @Nullable PlayerSomnolence somnolence) {
+        // Handler is created in start(), systems are registered before that
+        SleepEventHandler handler = plugin.getSleepEventHandler();
+        if (handler == null) {
+            return;
+        }
+
+        World world = store.getExternalData().getWorld();
+        handler.onSleepStateChanged(world, somnolence != null ? somnolence.getSleepState() : null);
+    }
+}
@@ -0,0 +1,24 @@
+package com.jodek.simplesleep.systems;
+
+import com.hypixel.hytale.component.Resource;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.jodek.simplesleep.events.SleepTally;
+
+/**
+ * Per-world store resource holding the count SleepCountingSystem adds to
+ * Every world's store has its own, so worlds never share a count
+ */
+public class SleepTallyResource implements Resource<EntityStore> {
+
+    private final SleepTally tally = new SleepTally();
+
+    public SleepTally getTally() {
+        return tally;
+    }
+
+    @Override
+    public Resource<EntityStore> clone() {
+        // A running count is never carried over
+        return new SleepTallyResource();
+    }
+}
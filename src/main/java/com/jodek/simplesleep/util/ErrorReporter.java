@@ -0,0 +1,102 @@
+package com.jodek.simplesleep.util;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Logs errors of the sleep checks without flooding the log
+ * The first error of a kind (source and exception type) is logged with its stack trace,
+ * repeats are only counted and logged as one summary line per kind and interval
+ */
+public class ErrorReporter {
+
+    // Kinds without a repeat for this many intervals are forgotten and logged in full again
+    private static final int FORGET_AFTER_INTERVALS = 10;
+
+    private final HytaleLogger logger;
+    private final long summaryIntervalMillis;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lastSummaryMillis = new AtomicLong(System.currentTimeMillis());
+
+    private record Key(String source, Class<?> type) {
+    }
+
+    private static final class Entry {
+
+        final AtomicLong suppressed = new AtomicLong();
+        volatile String lastMessage;
+        int quietIntervals;
+
+        Entry(String message) {
+            this.lastMessage = message;
+        }
+    }
+
+    /**
+     * @param summaryIntervalMillis Time between two summaries of suppressed repeats
+     */
+    public ErrorReporter(HytaleLogger logger, long summaryIntervalMillis) {
+        this.logger = logger;
+        this.summaryIntervalMillis = summaryIntervalMillis;
+    }
+
+    /**
+     * Reports an error, safe to call from any thread
+     *
+     * @param source What failed, e.g. a world name
+     */
+    public void report(String source, Throwable error) {
+        Key key = new Key(source, error.getClass());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Entry created = new Entry(error.getMessage());
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                logger.at(Level.WARNING).withCause(error).log("Sleep check failed for " + source + ": " + error
+                    + " (repeats are summarized every " + summaryIntervalMillis / 1000L + "s)");
+                return;
+            }
+        }
+
+        entry.suppressed.incrementAndGet();
+        entry.lastMessage = error.getMessage();
+        flushIfDue(System.currentTimeMillis());
+    }
+
+    /**
+     * Logs the summaries if the interval is over, cheap enough to call on every scheduler tick
+     */
+    public void flushIfDue(long nowMillis) {
+        long last = lastSummaryMillis.get();
+        if (nowMillis - last < summaryIntervalMillis || !lastSummaryMillis.compareAndSet(last, nowMillis)) {
+            return;
+        }
+        flush();
+    }
+
+    /**
+     * Logs one line per kind that repeated since the last summary
+     */
+    public void flush() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            long suppressed = entry.suppressed.getAndSet(0L);
+            if (suppressed > 0L) {
+                entry.quietIntervals = 0;
+                Key key = mapEntry.getKey();
+                logger.at(Level.WARNING).log("Sleep check failed for " + key.source() + " " + suppressed
+                    + " more times (" + key.type().getSimpleName() + ": " + entry.lastMessage + ")");
+            } else if (++entry.quietIntervals >= FORGET_AFTER_INTERVALS) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.jodek.simplesleep.util;
 
+import com.hypixel.hytale.protocol.packets.interface_.Notification;
 import com.hypixel.hytale.protocol.packets.interface_.NotificationStyle;
 import com.hypixel.hytale.server.core.Message;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.util.NotificationUtil;
 
 public class MessageUtil {
@@ -32,48 +34,92 @@ public class MessageUtil {
     }
 
     public static void broadcastActionBar(Universe universe, String message) {
-        // Create colored message
-        Message msg = Message.raw(message).color("#FFFF00"); // Yellow
-
         // Send to each player in each world
-        for (var world : universe.getWorlds().values()) {
-            for (PlayerRef player : world.getPlayerRefs()) {
-                NotificationUtil.sendNotification(
-                    player.getPacketHandler(),
-                    msg
-                );
-            }
-        }
+        broadcastActionBar(universe.getWorlds().values(), message);
     }
 
-    public static void broadcastNotificationWithSubtitle(Universe universe, String primary, String secondary) {
-        Message primaryMsg = Message.raw(primary).color("#00FF00"); // Green
-        Message secondaryMsg = Message.raw(secondary).color("#FFFF00"); // Yellow
+    /**
+     * Sends the message only to players in the given world
+     */
+    public static void broadcastActionBar(World world, String message) {
+        broadcastNotification(world, createActionBar(message));
+    }
 
+    /**
+     * Sends the message to players in a group of worlds
+     */
+    public static void broadcastActionBar(Iterable<World> worlds, String message) {
+        broadcastNotification(worlds, createActionBar(message));
+    }
+
+    public static void broadcastNotificationWithSubtitle(Universe universe, String primary, String secondary) {
         // Send to each player in each world
-        for (var world : universe.getWorlds().values()) {
-            for (PlayerRef player : world.getPlayerRefs()) {
-                NotificationUtil.sendNotification(
-                    player.getPacketHandler(),
-                    primaryMsg,
-                    secondaryMsg
-                );
-            }
-        }
+        broadcastNotification(universe.getWorlds().values(), createNotificationWithSubtitle(primary, secondary));
     }
 
     public static void broadcastStyledNotification(Universe universe, String message, NotificationStyle style) {
         Message msg = Message.raw(message);
 
         // Send to each player in each world
-        for (var world : universe.getWorlds().values()) {
-            for (PlayerRef player : world.getPlayerRefs()) {
-                NotificationUtil.sendNotification(
-                    player.getPacketHandler(),
-                    msg,
-                    style
-                );
-            }
+        broadcastNotification(universe.getWorlds().values(), createNotification(msg, null, style));
+    }
+
+    /**
+     * Builds the yellow notification packet the action bar broadcasts send
+     */
+    public static Notification createActionBar(String message) {
+        // Create colored message
+        Message msg = Message.raw(message).color("#FFFF00"); // Yellow
+
+        return createNotification(msg, null, NotificationStyle.Default);
+    }
+
+    /**
+     * Builds the green and yellow notification packet broadcastNotificationWithSubtitle sends
+     */
+    public static Notification createNotificationWithSubtitle(String primary, String secondary) {
+        Message primaryMsg = Message.raw(primary).color("#00FF00"); // Green
+        Message secondaryMsg = Message.raw(secondary).color("#FFFF00"); // Yellow
+
+        return createNotification(primaryMsg, secondaryMsg, NotificationStyle.Default);
+    }
+
+    /**
+     * Builds a notification packet that can be sent to any number of players
+     * Same packet NotificationUtil builds, but only once per broadcast instead of once per player
+     */
+    public static Notification createNotification(Message primary, Message secondary, NotificationStyle style) {
+        return new Notification(
+            primary.getFormattedMessage(),
+            secondary != null ? secondary.getFormattedMessage() : null,
+            null,
+            null,
+            style
+        );
+    }
+
+    /**
+     * Sends the same notification packet to every player in the given world
+     * The packet must not be changed afterwards
+     *
+     * @return Number of players the packet was sent to
+     */
+    public static int broadcastNotification(World world, Notification notification) {
+        int sent = 0;
+        for (PlayerRef player : world.getPlayerRefs()) {
+            player.getPacketHandler().writeNoCache(notification);
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Sends the same notification packet to every player in a group of worlds
+     * The packet must not be changed afterwards
+     */
+    public static void broadcastNotification(Iterable<World> worlds, Notification notification) {
+        for (World world : worlds) {
+            broadcastNotification(world, notification);
         }
     }
 }
@@ -0,0 +1,35 @@
+package com.jodek.simplesleep.util;
+
+import com.hypixel.hytale.protocol.packets.interface_.Notification;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the "x/y players sleeping" notifications
+ * The same (sleeping, required) pair always reuses the same packet
+ */
+public class SleepMessageCache {
+
+    // Plenty for every count a server will see, cleared if it ever grows past this
+    private static final int MAX_ENTRIES = 4096;
+
+    private final Map<Long, Notification> notifications = new ConcurrentHashMap<>();
+
+    public Notification get(int sleeping, int required) {
+        long key = ((long) sleeping << 32) | (required & 0xFFFFFFFFL);
+
+        Notification notification = notifications.get(key);
+        if (notification == null) {
+            if (notifications.size() >= MAX_ENTRIES) {
+                notifications.clear();
+            }
+            notification = notifications.computeIfAbsent(key, k -> create(sleeping, required));
+        }
+        return notification;
+    }
+
+    private static Notification create(int sleeping, int required) {
+        return MessageUtil.createActionBar(sleeping + "/" + required + " players sleeping");
+    }
+}
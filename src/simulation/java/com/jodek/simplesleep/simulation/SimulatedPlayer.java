@@ -0,0 +1,51 @@
+package com.jodek.simplesleep.simulation;
+
+import java.util.UUID;
+
+/**
+ * Player with a scripted sleep timeline for one night
+ * Goes to bed at a fixed time (or never) and stays NoddingOff until the night ends,
+ * while awake it walks around unless it is AFK
+ */
+final class SimulatedPlayer {
+
+    // Never goes to bed this night
+    static final long AWAKE = Long.MAX_VALUE;
+
+    final UUID uuid;
+    private final boolean afk;
+
+    private long bedTimeMillis = AWAKE;
+    private double x;
+
+    SimulatedPlayer(UUID uuid, boolean afk) {
+        this.uuid = uuid;
+        this.afk = afk;
+    }
+
+    void scheduleBedTime(long bedTimeMillis) {
+        this.bedTimeMillis = bedTimeMillis;
+    }
+
+    void wakeUp() {
+        this.bedTimeMillis = AWAKE;
+    }
+
+    long getBedTimeMillis() {
+        return bedTimeMillis;
+    }
+
+    boolean isSleeping(long nowMillis) {
+        return bedTimeMillis != AWAKE && nowMillis >= bedTimeMillis;
+    }
+
+    /**
+     * Position along the x axis, a player that is not AFK has moved since the last look
+     */
+    double sampleX() {
+        if (!afk) {
+            x += 1.0;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,76 @@
+package com.jodek.simplesleep.simulation;
+
+import com.jodek.simplesleep.events.SleepTally;
+import com.jodek.simplesleep.state.WorldSleepState;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+
+/**
+ * World with its own tick loop, a task queue like World.execute and scripted players
+ */
+final class SimulatedWorld {
+
+    final String name;
+    final SimulatedPlayer[] players;
+    final WorldSleepState state;
+
+    // Extra time every tick of this world takes, simulates an overloaded world
+    final long tickLagMillis;
+
+    // Count made by the counting system during the ticks (ECS mode)
+    final SleepTally tally = new SleepTally();
+    long tallyCpuNanos;
+
+    long nextTickMillis;
+
+    // Skipped or sped up to the morning, the world is in slumber until the next night
+    boolean nightEnded;
+
+    // Game time a speed-up moved this night forward
+    long acceleratedGameMillis;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    SimulatedWorld(int index, int playerCount, int afkPlayers, long tickLagMillis) {
+        this.name = "world-" + index;
+        this.players = new SimulatedPlayer[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            players[i] = new SimulatedPlayer(new UUID(index, i), i < afkPlayers);
+        }
+        this.state = new WorldSleepState(name);
+        this.tickLagMillis = tickLagMillis;
+    }
+
+    /**
+     * Queues a task for the next tick of this world
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Runs the tasks queued before this tick, tasks they queue wait for the next one
+     */
+    void runTasks() {
+        for (int i = tasks.size(); i > 0; i--) {
+            tasks.poll().run();
+        }
+    }
+
+    void startNight() {
+        nightEnded = false;
+        acceleratedGameMillis = 0L;
+    }
+
+    /**
+     * Ends the night like a slumber, every player wakes up
+     */
+    void endNight() {
+        nightEnded = true;
+        for (SimulatedPlayer player : players) {
+            player.wakeUp();
+        }
+    }
+}
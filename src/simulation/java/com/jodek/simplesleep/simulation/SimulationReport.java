@@ -0,0 +1,83 @@
+package com.jodek.simplesleep.simulation;
+
+import com.jodek.simplesleep.state.WorldSleepState;
+
+import java.util.Arrays;
+
+/**
+ * Collects the numbers of one simulation run
+ */
+final class SimulationReport {
+
+    private long checks;
+    private long checkCpuNanos;
+    private long playersScanned;
+    private long notifications;
+    private long skips;
+    private long missedNights;
+    private long maxCheckLagMicros;
+    private long checkLagMicrosSum;
+    private int worlds;
+    private long[] skipLatencies = new long[64];
+    private int skipLatencyCount;
+
+    void recordCheck(long cpuNanos, int players) {
+        checks++;
+        checkCpuNanos += cpuNanos;
+        playersScanned += players;
+    }
+
+    void recordNotifications(int recipients) {
+        notifications += recipients;
+    }
+
+    /**
+     * @param latencyMillis Time since the threshold was met, negative if the world never saw it met, same as the plugin's metric
+     */
+    void recordSkip(long latencyMillis) {
+        skips++;
+        if (latencyMillis < 0L) {
+            return;
+        }
+        if (skipLatencyCount == skipLatencies.length) {
+            skipLatencies = Arrays.copyOf(skipLatencies, skipLatencies.length * 2);
+        }
+        skipLatencies[skipLatencyCount++] = latencyMillis;
+    }
+
+    void recordMissedNight() {
+        missedNights++;
+    }
+
+    /**
+     * Adds the queue lag the plugin measured for a world's checks
+     */
+    void recordWorld(WorldSleepState state) {
+        worlds++;
+        checkLagMicrosSum += state.getAverageCheckLagMicros();
+        maxCheckLagMicros = Math.max(maxCheckLagMicros, state.getMaxCheckLagMicros());
+    }
+
+    String format(int playersPerWorld, int nights, String mode) {
+        long[] latencies = Arrays.copyOf(skipLatencies, skipLatencyCount);
+        Arrays.sort(latencies);
+
+        StringBuilder out = new StringBuilder();
+        out.append("SimpleSleep simulation: ").append(worlds).append(" worlds x ")
+            .append(playersPerWorld).append(" players, ").append(nights).append(" nights, ").append(mode).append('\n');
+        out.append("  checks run:          ").append(checks).append('\n');
+        out.append("  players scanned:     ").append(playersScanned).append('\n');
+        out.append("  cpu per check:       ").append(checks == 0 ? 0 : checkCpuNanos / checks).append(" ns\n");
+        out.append("  notifications sent:  ").append(notifications).append('\n');
+        out.append("  check lag avg:       ").append(worlds == 0 ? 0 : checkLagMicrosSum / worlds / 1000L).append(" ms\n");
+        out.append("  check lag max:       ").append(maxCheckLagMicros / 1000L).append(" ms\n");
+        out.append("  nights skipped:      ").append(skips).append('\n');
+        out.append("  nights not skipped:  ").append(missedNights).append('\n');
+        if (latencies.length > 0) {
+            out.append("  skip latency avg:    ").append(Arrays.stream(latencies).sum() / latencies.length).append(" ms\n");
+            out.append("  skip latency p95:    ").append(latencies[(int) (latencies.length * 0.95)]).append(" ms\n");
+            out.append("  skip latency max:    ").append(latencies[latencies.length - 1]).append(" ms\n");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,373 @@
+package com.jodek.simplesleep.simulation;
+
+import com.jodek.simplesleep.config.LinkedWorldGroup;
+import com.jodek.simplesleep.config.SleepConfig;
+import com.jodek.simplesleep.config.SleepSettings;
+import com.jodek.simplesleep.events.SleepDecision;
+import com.jodek.simplesleep.events.SleepEvaluator;
+import com.jodek.simplesleep.events.SleepSnapshot;
+import com.jodek.simplesleep.events.SleepTally;
+import com.jodek.simplesleep.scheduler.AdaptiveCheckPlanner;
+import com.jodek.simplesleep.state.PlayerActivityTracker;
+import com.jodek.simplesleep.state.WorldSleepState;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * Headless load test for sleep configurations
+ * Drives the plugin's own SleepTally, SleepEvaluator and WorldSleepState against simulated worlds
+ * on a virtual clock, wired up the way SleepEventHandler wires them to the server, so per-world
+ * and group rules, policies, linked groups, AFK exclusion, accelerated nights and the event driven
+ * and ECS modes all behave as on a server with hundreds of worlds and thousands of players
+ * Worlds are named world-0, world-1, ... so the config's worlds and worldGroups apply to them
+ * Permissions need a server, every player has weight 1
+ *
+ * Usage: ./gradlew runSimulation --args="--worlds 200 --players 25 --nights 5"
+ */
+public final class SleepSimulation {
+
+    // Virtual clock resolution and world tick rate (30 TPS)
+    private static final long STEP_MILLIS = 5L;
+    private static final long TICK_MILLIS = 33L;
+
+    private final SleepSettings settings;
+    private final SimulatedWorld[] worlds;
+    private final Map<String, SimulatedWorld> worldsByName = new HashMap<>();
+    private final Random random;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final SimulationReport report = new SimulationReport();
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final SleepEvaluator evaluator = new SleepEvaluator();
+    private final PlayerActivityTracker activityTracker = new PlayerActivityTracker();
+    private final SleepTally captureTally = new SleepTally();
+
+    private final double sleepChance;
+    private final long bedWindowMillis;
+    private final long nightLengthMillis;
+    private final long gameNightMillis;
+
+    private long clockMillis = 1L;
+    private long nightStartMillis;
+
+    private SleepSimulation(SleepSettings settings, Map<String, String> options) {
+        this.settings = settings;
+        this.random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+        this.sleepChance = Double.parseDouble(options.getOrDefault("sleep-chance", "0.6"));
+        this.bedWindowMillis = Long.parseLong(options.getOrDefault("bed-window", "60000"));
+        this.nightLengthMillis = Long.parseLong(options.getOrDefault("night-length", "300000"));
+        this.gameNightMillis = (long) (Double.parseDouble(options.getOrDefault("game-night-hours", "10")) * 3_600_000.0);
+
+        int worldCount = Integer.parseInt(options.getOrDefault("worlds", "100"));
+        int playersPerWorld = Integer.parseInt(options.getOrDefault("players", "20"));
+        int afkPlayers = (int) (playersPerWorld * Double.parseDouble(options.getOrDefault("afk-players", "0.1")));
+        double laggingWorlds = Double.parseDouble(options.getOrDefault("lagging-worlds", "0.1"));
+        long lagMillis = Long.parseLong(options.getOrDefault("lag", "200"));
+
+        this.worlds = new SimulatedWorld[worldCount];
+        for (int i = 0; i < worldCount; i++) {
+            long tickLag = random.nextDouble() < laggingWorlds ? lagMillis : 0L;
+            worlds[i] = new SimulatedWorld(i, playersPerWorld, afkPlayers, tickLag);
+            worldsByName.put(worlds[i].name, worlds[i]);
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseOptions(args);
+
+        // Only load an existing config, load() would write a default one otherwise
+        Path configPath = Paths.get(options.getOrDefault("config", "config/SimpleSleep.json"));
+        SleepConfig config = new SleepConfig(configPath);
+        if (Files.exists(configPath)) {
+            config.load();
+        }
+
+        int nights = Integer.parseInt(options.getOrDefault("nights", "3"));
+        SleepSimulation simulation = new SleepSimulation(config.compile(), options);
+        simulation.start();
+        for (int night = 0; night < nights; night++) {
+            simulation.runNight();
+        }
+
+        for (SimulatedWorld world : simulation.worlds) {
+            simulation.report.recordWorld(world.state);
+        }
+        SleepSettings settings = simulation.settings;
+        String mode = settings.describeMode() + (settings.isEcsTicking() ? " (ECS)"
+            : settings.isEventDriven() ? " (event driven)" : "");
+        System.out.print(simulation.report.format(
+            simulation.worlds.length == 0 ? 0 : simulation.worlds[0].players.length, nights, mode));
+    }
+
+    // Same tick as SimpleSleep's scheduler
+    private void start() {
+        scheduler.scheduleAtFixedRate(this::checkAllWorlds, AdaptiveCheckPlanner.NODDING_OFF_DELAY_MILLIS,
+            AdaptiveCheckPlanner.NODDING_OFF_DELAY_MILLIS);
+    }
+
+    private void runNight() {
+        scheduler.advanceTo(clockMillis);
+        nightStartMillis = clockMillis;
+        long nightEnd = nightStartMillis + nightLengthMillis;
+
+        for (SimulatedWorld world : worlds) {
+            world.startNight();
+            for (SimulatedPlayer player : world.players) {
+                if (random.nextDouble() < sleepChance) {
+                    long bedTime = nightStartMillis + (long) (random.nextDouble() * bedWindowMillis);
+                    player.scheduleBedTime(bedTime);
+                    scheduler.schedule(() -> onSleepStateChanged(world), bedTime - clockMillis);
+                } else {
+                    player.wakeUp();
+                }
+            }
+            world.nextTickMillis = nightStartMillis + random.nextInt((int) TICK_MILLIS);
+        }
+
+        for (; clockMillis < nightEnd; clockMillis += STEP_MILLIS) {
+            scheduler.advanceTo(clockMillis);
+
+            for (SimulatedWorld world : worlds) {
+                if (clockMillis >= world.nextTickMillis) {
+                    world.nextTickMillis = clockMillis + TICK_MILLIS + world.tickLagMillis;
+                    worldTick(world);
+                }
+            }
+        }
+
+        for (SimulatedWorld world : worlds) {
+            if (!world.nightEnded) {
+                report.recordMissedNight();
+                world.state.stopAcceleration();
+                world.endNight();
+            }
+        }
+    }
+
+    // Same as SleepEventHandler.onSleepStateChanged for a player going to bed
+    private void onSleepStateChanged(SimulatedWorld world) {
+        if (!settings.isEventDriven()) {
+            return;
+        }
+
+        requestCheck(world);
+        scheduler.schedule(() -> requestCheck(world), SleepEvaluator.READY_RECHECK_DELAY_MILLIS);
+    }
+
+    // Same as SleepEventHandler.checkAllWorlds
+    private void checkAllWorlds() {
+        if (settings.isEventDriven() || settings.isEcsTicking()) {
+            return;
+        }
+
+        for (SimulatedWorld world : worlds) {
+            if (world.state.isCheckDue(clockMillis)) {
+                requestCheck(world);
+            }
+        }
+    }
+
+    // Same as SleepEventHandler.requestCheck, the virtual clock stands in for System.nanoTime
+    private void requestCheck(SimulatedWorld world) {
+        WorldSleepState state = world.state;
+        if (!state.tryQueueCheck(clockMillis * 1_000_000L)) {
+            return;
+        }
+
+        if (settings.isEcsTicking()) {
+            return;
+        }
+
+        world.execute(() -> {
+            state.startQueuedCheck(clockMillis * 1_000_000L);
+            runCheck(world, null);
+        });
+    }
+
+    // The counting systems run first, then the tasks queued on the world
+    private void worldTick(SimulatedWorld world) {
+        if (settings.isEcsTicking()) {
+            onWorldTick(world);
+        }
+        world.runTasks();
+    }
+
+    // Same as SleepCountingSystem followed by SleepEventHandler.onWorldTick
+    private void onWorldTick(SimulatedWorld world) {
+        SleepTally tally = world.tally;
+        if (tally.isCounting()) {
+            long cpuStart = threadBean.getCurrentThreadCpuTime();
+            for (SimulatedPlayer player : world.players) {
+                count(tally, player);
+            }
+            world.tallyCpuNanos = threadBean.getCurrentThreadCpuTime() - cpuStart;
+            tally.addMissing(world.players.length);
+            runCheck(world, tally.finish());
+        }
+
+        WorldSleepState state = world.state;
+        if (evaluator.shouldStartCount(state, settings, clockMillis)) {
+            evaluator.startCount(state, clockMillis, clockMillis * 1_000_000L);
+            tally.begin(SleepEvaluator.countingPolicy(settings, world.name),
+                settings.isAfkExclusion() ? activityTracker : null, settings.getAfkThresholdMillis(), clockMillis);
+        }
+    }
+
+    // Same as SleepEventHandler.runCheck
+    private void runCheck(SimulatedWorld world, SleepSnapshot counted) {
+        long cpuStart = threadBean.getCurrentThreadCpuTime();
+        long checkStart = System.nanoTime();
+        SleepSnapshot snapshot = evaluateWorld(world, counted);
+        long duration = System.nanoTime() - checkStart;
+        if (snapshot != null) {
+            report.recordCheck(threadBean.getCurrentThreadCpuTime() - cpuStart + world.tallyCpuNanos,
+                world.players.length);
+        }
+        world.tallyCpuNanos = 0L;
+
+        // The simulation only runs nights, so the day delays of the planner never apply
+        long delay = settings.isAdaptiveChecks() && snapshot != null && snapshot.getDisplaySleepingPlayers() > 0
+            ? AdaptiveCheckPlanner.planSleepingDelay(snapshot)
+            : AdaptiveCheckPlanner.NIGHT_DELAY_MILLIS;
+        evaluator.completeCheck(world.state, settings, snapshot, duration, delay, clockMillis);
+    }
+
+    // Same as SleepEventHandler.evaluateWorld
+    private SleepSnapshot evaluateWorld(SimulatedWorld world, SleepSnapshot counted) {
+        WorldSleepState state = world.state;
+        if (world.nightEnded || world.players.length == 0) {
+            apply(world, evaluator.idle(state, settings, world.name));
+            return null;
+        }
+
+        SleepSnapshot snapshot = counted;
+        if (snapshot == null) {
+            captureTally.begin(SleepEvaluator.countingPolicy(settings, world.name),
+                settings.isAfkExclusion() ? activityTracker : null, settings.getAfkThresholdMillis(), clockMillis);
+            for (SimulatedPlayer player : world.players) {
+                // Random access lookup of the player list path
+                captureTally.addLookup();
+                count(captureTally, player);
+            }
+            snapshot = captureTally.finish();
+        }
+
+        SleepDecision decision = evaluator.evaluate(state, settings, world.name, snapshot, clockMillis);
+        apply(world, decision);
+        return snapshot;
+    }
+
+    // Counts a scripted player like SleepTally.add counts a server player
+    private void count(SleepTally tally, SimulatedPlayer player) {
+        if (player.isSleeping(clockMillis)) {
+            tally.addNoddingOff(player.getBedTimeMillis(), 1.0, null);
+        } else if (settings.isAfkExclusion()) {
+            tally.addAwake(player.uuid, player.sampleX(), 0.0, 0.0);
+        } else {
+            tally.addAwake();
+        }
+    }
+
+    // Same as SleepEventHandler.apply, the notification goes to every player of the world
+    private void apply(SimulatedWorld world, SleepDecision decision) {
+        WorldSleepState state = world.state;
+        if (decision.isMemberChecks()) {
+            forEachOtherMember(decision.getLinkedGroup(), world, this::requestCheck);
+        }
+
+        if (decision.getMessage() == SleepDecision.Message.SEND) {
+            report.recordNotifications(world.players.length);
+            state.getMetrics().recordNotifications(world.players.length);
+        } else if (decision.getMessage() == SleepDecision.Message.DEFER) {
+            scheduler.schedule(() -> {
+                state.clearMessageFlush();
+                requestCheck(world);
+            }, decision.getMessageDelayMillis());
+        }
+
+        if (decision.isStartAcceleration()) {
+            startAcceleration(world);
+        }
+
+        if (decision.isSkipMembers()) {
+            forEachOtherMember(decision.getLinkedGroup(), world,
+                member -> member.execute(() -> skipLinkedMember(member)));
+        }
+        if (decision.isSkip() && !world.nightEnded) {
+            world.endNight();
+            report.recordSkip(decision.getThresholdToSkipMillis());
+        }
+    }
+
+    private void forEachOtherMember(LinkedWorldGroup linkedGroup, SimulatedWorld source,
+                                    Consumer<SimulatedWorld> action) {
+        for (String worldName : linkedGroup.getWorldNames()) {
+            SimulatedWorld member = worldsByName.get(worldName);
+            if (member != null && member != source) {
+                action.accept(member);
+            }
+        }
+    }
+
+    // Same as SleepEventHandler.skipLinkedMember
+    private void skipLinkedMember(SimulatedWorld world) {
+        if (world.nightEnded) {
+            return;
+        }
+
+        world.endNight();
+        report.recordSkip(evaluator.finishNight(world.state, clockMillis));
+    }
+
+    // Same as SleepEventHandler.startAcceleration
+    private void startAcceleration(SimulatedWorld world) {
+        long interval = settings.getTimeUpdateIntervalMillis();
+        ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(
+            () -> world.execute(() -> stepNight(world)), interval, interval);
+        world.state.startAcceleration(task, clockMillis);
+    }
+
+    // Same as SleepEventHandler.stepNight, the night passes at its normal rate besides the speed-up
+    private void stepNight(SimulatedWorld world) {
+        WorldSleepState state = world.state;
+        if (world.nightEnded) {
+            state.stopAcceleration();
+            return;
+        }
+
+        long advance = evaluator.planNightStep(state, settings, clockMillis);
+        if (advance <= 0L) {
+            return;
+        }
+
+        world.acceleratedGameMillis += advance;
+        long naturalGameMillis = (clockMillis - nightStartMillis) * gameNightMillis / nightLengthMillis;
+        if (world.acceleratedGameMillis + naturalGameMillis < gameNightMillis) {
+            return;
+        }
+
+        state.stopAcceleration();
+        world.endNight();
+        report.recordSkip(evaluator.finishNight(state, clockMillis));
+    }
+
+    // Reads --key value pairs
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) {
+                options.put(args[i].substring(2), args[i + 1]);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,119 @@
+package com.jodek.simplesleep.simulation;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delayed and repeating tasks on the simulation's virtual clock, stands in for SleepScheduler
+ * Tasks run on the simulation thread when the clock passes their due time
+ */
+final class VirtualScheduler {
+
+    private final PriorityQueue<VirtualTask> tasks = new PriorityQueue<>(
+        Comparator.comparingLong((VirtualTask task) -> task.dueMillis).thenComparingLong(task -> task.sequence));
+
+    private long nowMillis;
+    private long sequence;
+
+    /**
+     * Runs a task once after a delay
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return add(new VirtualTask(task, nowMillis + delayMillis, 0L));
+    }
+
+    /**
+     * Runs a task repeatedly until it is cancelled
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        return add(new VirtualTask(task, nowMillis + initialDelayMillis, periodMillis));
+    }
+
+    /**
+     * Moves the clock forward and runs every task that is due by then, in the order they became due
+     */
+    void advanceTo(long timeMillis) {
+        // Tasks run at the step they became due in, like the clock they read
+        nowMillis = timeMillis;
+        VirtualTask next;
+        while ((next = tasks.peek()) != null && next.dueMillis <= timeMillis) {
+            tasks.poll();
+            if (next.cancelled) {
+                continue;
+            }
+
+            next.task.run();
+            if (next.periodMillis > 0L && !next.cancelled) {
+                next.dueMillis += next.periodMillis;
+                add(next);
+            } else {
+                next.done = true;
+            }
+        }
+    }
+
+    private VirtualTask add(VirtualTask task) {
+        task.sequence = sequence++;
+        tasks.add(task);
+        return task;
+    }
+
+    private final class VirtualTask implements ScheduledFuture<Object> {
+
+        private final Runnable task;
+        private final long periodMillis;
+        private long dueMillis;
+        private long sequence;
+        private boolean cancelled;
+        private boolean done;
+
+        private VirtualTask(Runnable task, long dueMillis, long periodMillis) {
+            this.task = task;
+            this.dueMillis = dueMillis;
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueMillis - nowMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public Object get() {
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+}